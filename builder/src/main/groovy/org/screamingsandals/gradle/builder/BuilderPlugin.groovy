@@ -2,7 +2,6 @@ package org.screamingsandals.gradle.builder
 
 import com.github.jengelman.gradle.plugins.shadow.ShadowPlugin
 import com.jcraft.jsch.ChannelSftp
-import com.jcraft.jsch.JSch
 import com.jcraft.jsch.SftpException
 import org.cadixdev.gradle.licenser.Licenser
 import org.gradle.api.Plugin
@@ -12,19 +11,39 @@ import org.gradle.api.plugins.JavaLibraryPlugin
 import org.gradle.api.publish.PublishingExtension
 import org.gradle.api.publish.maven.MavenPublication
 import org.gradle.api.publish.maven.plugins.MavenPublishPlugin
+import org.gradle.api.tasks.bundling.AbstractArchiveTask
 import org.gradle.api.tasks.bundling.Jar
+import org.gradle.api.tasks.javadoc.Javadoc
+import org.gradle.build.event.BuildEventsListenerRegistry
 import org.screamingsandals.gradle.builder.debug.TestTaskBuilder
 import org.screamingsandals.gradle.builder.dependencies.Dependencies
+import org.screamingsandals.gradle.builder.dependencies.WarmDependencyCacheTask
+import org.screamingsandals.gradle.builder.javadoc.JavadocArchiveUpload
+import org.screamingsandals.gradle.builder.javadoc.JavadocHostService
+import org.screamingsandals.gradle.builder.javadoc.JavadocSync
 import org.screamingsandals.gradle.builder.maven.GitlabRepository
 import org.screamingsandals.gradle.builder.maven.NexusRepository
+import org.screamingsandals.gradle.builder.repositories.DependencyMirror
 import org.screamingsandals.gradle.builder.repositories.Repositories
+import org.screamingsandals.gradle.builder.repositories.RepositoryContent
 import org.screamingsandals.gradle.builder.webhook.DiscordWebhookExtension
+import org.screamingsandals.gradle.metrics.BuildMetricsService
 import io.freefair.gradle.plugins.lombok.LombokPlugin
 
+import javax.inject.Inject
+
 class BuilderPlugin implements Plugin<Project> {
+    private final BuildEventsListenerRegistry eventsListenerRegistry
+
+    @Inject
+    BuilderPlugin(BuildEventsListenerRegistry eventsListenerRegistry) {
+        this.eventsListenerRegistry = eventsListenerRegistry
+    }
 
     @Override
     void apply(Project project) {
+        def metrics = BuildMetricsService.register(project, eventsListenerRegistry)
+
         def ciCdOptimized = System.getenv("OPTIMIZE_FOR_CI_CD") == "1"
 
         project.apply {
@@ -33,11 +52,19 @@ class BuilderPlugin implements Plugin<Project> {
             plugin JavaLibraryPlugin.class
         }
 
+        // stable archive hashes, so unchanged publications are recognized and skipped
+        project.tasks.withType(AbstractArchiveTask).configureEach {
+            it.preserveFileTimestamps = false
+            it.reproducibleFileOrder = true
+        }
+
         Repositories.registerRepositoriesMethods(project)
+        RepositoryContent.applyContentFilters(project)
         Dependencies.registerDependenciesMethods(project)
+        project.tasks.register("warmDependencyCache", WarmDependencyCacheTask)
 
         project.repositories {
-            mavenCentral()
+            DependencyMirror.repository(project) ?: mavenCentral()
             //mavenLocal()
 
             screaming()
@@ -75,70 +102,85 @@ class BuilderPlugin implements Plugin<Project> {
         }
 
         if (System.getenv("GITLAB_REPO") != null || (System.getenv("NEXUS_URL_SNAPSHOT") != null && System.getenv("NEXUS_URL_RELEASE") != null)) {
-            project.task('sourceJar', type: Jar) {
-                it.archiveClassifier = 'sources'
-                from project.sourceSets.main.allJava
+            project.tasks.register('sourceJar', Jar) {
+                it.archiveClassifier.set('sources')
+                it.from(project.sourceSets.main.allJava)
             }
         }
 
         if (System.getenv('JAVADOC_HOST') != null) {
             def srcmain = project.file("src/main");
 
-            project.javadoc {
-                options.addBooleanOption('html5', true)
+            project.tasks.named('javadoc', Javadoc).configure {
+                it.options.addBooleanOption('html5', true)
             }
 
-            project.task('javadocJar', type: Jar, dependsOn: project.javadoc) {
-                it.archiveClassifier = 'javadoc'
-                from project.javadoc
+            project.tasks.register('javadocJar', Jar) {
+                it.archiveClassifier.set('javadoc')
+                it.from(project.tasks.named('javadoc'))
             }
 
             if (System.getenv('JAVADOC_HOST') != null && System.getenv('JAVADOC_USER') != null && System.getenv('JAVADOC_SECRET') != null) {
+                def javadocHost = project.gradle.sharedServices.registerIfAbsent("screamingJavadocHost", JavadocHostService) {
+                    it.parameters.host.set(System.getenv('JAVADOC_HOST'))
+                    it.parameters.user.set(System.getenv('JAVADOC_USER'))
+                    it.parameters.secret.set(System.getenv('JAVADOC_SECRET'))
+                    it.parameters.maxChannels.set(System.getProperty("JavadocUploadMaxChannels", "8") as int)
+                }
+
                 project.tasks.register("uploadJavadoc") {
+                    it.usesService(javadocHost)
+                    if (metrics != null) {
+                        it.usesService(metrics)
+                    }
+                    def javadocDirectory = project.file('build/docs/javadoc')
+                    def projectJavadocDirectories
+                    def custom = System.getProperty("JavadocUploadCustomDirectoryPath")
+                    if (custom != null && !custom.isEmpty()) {
+                        if (project.getRootProject() == project) {
+                            projectJavadocDirectories = [custom]
+                        } else {
+                            projectJavadocDirectories = [custom, project.getName()]
+                        }
+                    } else {
+                        if (project.getRootProject() == project) {
+                            projectJavadocDirectories = [project.getName()]
+                        } else {
+                            projectJavadocDirectories = [project.getRootProject().getName(), project.getName()]
+                        }
+                    }
+
                     doLast {
                         try {
-                            def projectJavadocDirectories
-                            def custom = System.getProperty("JavadocUploadCustomDirectoryPath")
-                            if (custom != null && !custom.isEmpty()) {
-                                if (project.getRootProject() == project) {
-                                    projectJavadocDirectories = [custom]
-                                } else {
-                                    projectJavadocDirectories = [custom, project.getName()]
+                            def pool = javadocHost.get().pool
+                            pool.withSftp { ChannelSftp sftpChannel ->
+                                sftpChannel.cd("www")
+
+                                projectJavadocDirectories.forEach {
+                                    try {
+                                        sftpChannel.cd(it)
+                                    } catch (SftpException ignored) {
+                                        sftpChannel.mkdir(it)
+                                        sftpChannel.cd(it)
+                                    }
                                 }
-                            } else {
-                                if (project.getRootProject() == project) {
-                                    projectJavadocDirectories = [project.getName()]
-                                } else {
-                                    projectJavadocDirectories = [project.getRootProject().getName(), project.getName()]
-                                }
-                            }
 
-                            def jsch = new JSch()
-                            def jschSession = jsch.getSession(System.getenv('JAVADOC_USER'), System.getenv('JAVADOC_HOST'))
-                            jschSession.setConfig("StrictHostKeyChecking", "no");
-                            jschSession.setPassword(System.getenv('JAVADOC_SECRET'))
-                            jschSession.connect()
-                            def sftpChannel = jschSession.openChannel("sftp") as ChannelSftp
-                            sftpChannel.connect()
-
-                            sftpChannel.cd("www")
-
-                            projectJavadocDirectories.forEach {
-                                try {
-                                    sftpChannel.cd(it)
-                                } catch (SftpException ignored) {
-                                    sftpChannel.mkdir(it)
-                                    sftpChannel.cd(it)
+                                def archive = System.getProperty("JavadocUploadMode") == "archive" ? new JavadocArchiveUpload(pool, javadocDirectory) : null
+                                if (archive != null && !archive.supportedByHost) {
+                                    println "The javadoc host has no GNU mv -T to swap the tree with, uploading it file by file instead"
+                                    archive = null
+                                }
+                                if (archive != null) {
+                                    def result = archive.upload(sftpChannel)
+                                    metrics?.get()?.uploaded(result.compressedBytes as long)
+                                    println "Javadoc replaced: $result.files files in a $result.compressedBytes bytes archive"
+                                } else {
+                                    def parallelism = System.getProperty("JavadocUploadParallelism", "4") as int
+                                    def result = new JavadocSync(pool, javadocDirectory, parallelism).sync(sftpChannel)
+                                    metrics?.get()?.uploaded(result.uploadedBytes as long)
+                                    println "Javadoc synchronized: $result.uploaded uploaded, $result.deleted deleted, $result.unchanged unchanged"
                                 }
                             }
-
-                            recursiveClear(sftpChannel)
-
-                            recursiveFolderUpload(sftpChannel, project.file('build/docs/javadoc'))
-
-                            sftpChannel.disconnect()
-
-                            jschSession.disconnect()
                         } catch (SftpException exception) {
                             exception.printStackTrace()
                         }
@@ -157,28 +199,37 @@ class BuilderPlugin implements Plugin<Project> {
             }
 
             if (System.getenv("GITLAB_REPO") != null || (System.getenv("NEXUS_URL_SNAPSHOT") != null && System.getenv("NEXUS_URL_RELEASE") != null)) {
-                it.artifact(project.tasks.sourceJar)
+                it.artifact(project.tasks.named('sourceJar'))
+            }
+
+            // resolved into plain values so the pom generation doesn't hold the project (configuration cache)
+            def providedDependencies = project.provider {
+                project.configurations.compileOnly.dependencies.findAll {
+                    !(it instanceof SelfResolvingDependency)
+                }.collect { [it.group, it.name, it.version] }
+            }
+            def compileDependencies = project.provider {
+                if (project.tasks.names.contains("shadowJar")) {
+                    return []
+                }
+                project.configurations.api.dependencies.collect { [it.group, it.name, it.version] }
             }
 
             it.pom.withXml {
                 def dependenciesNode = asNode().appendNode("dependencies")
-                project.configurations.compileOnly.dependencies.each {
-                    if (!(it instanceof SelfResolvingDependency)) {
-                        def dependencyNode = dependenciesNode.appendNode('dependency')
-                        dependencyNode.appendNode('groupId', it.group)
-                        dependencyNode.appendNode('artifactId', it.name)
-                        dependencyNode.appendNode('version', it.version)
-                        dependencyNode.appendNode('scope', 'provided')
-                    }
+                providedDependencies.get().each {
+                    def dependencyNode = dependenciesNode.appendNode('dependency')
+                    dependencyNode.appendNode('groupId', it[0])
+                    dependencyNode.appendNode('artifactId', it[1])
+                    dependencyNode.appendNode('version', it[2])
+                    dependencyNode.appendNode('scope', 'provided')
                 }
-                if (!project.tasks.findByName("shadowJar")) {
-                    project.configurations.api.dependencies.each {
-                        def dependencyNode = dependenciesNode.appendNode('dependency')
-                        dependencyNode.appendNode('groupId', it.group)
-                        dependencyNode.appendNode('artifactId', it.name)
-                        dependencyNode.appendNode('version', it.version)
-                        dependencyNode.appendNode('scope', 'compile')
-                    }
+                compileDependencies.get().each {
+                    def dependencyNode = dependenciesNode.appendNode('dependency')
+                    dependencyNode.appendNode('groupId', it[0])
+                    dependencyNode.appendNode('artifactId', it[1])
+                    dependencyNode.appendNode('version', it[2])
+                    dependencyNode.appendNode('scope', 'compile')
                 }
             }
         }
@@ -188,8 +239,10 @@ class BuilderPlugin implements Plugin<Project> {
                 plugin ShadowPlugin.class
             }
 
-            project.tasks.getByName("screamCompile").dependsOn -= "build"
-            project.tasks.getByName("screamCompile").dependsOn += "shadowJar"
+            project.tasks.named("screamCompile").configure {
+                it.dependsOn -= "build"
+                it.dependsOn += "shadowJar"
+            }
 
             maven.each {
                 it.getArtifacts().removeIf {
@@ -223,41 +276,14 @@ class BuilderPlugin implements Plugin<Project> {
 
         project.getExtensions().create("discord", DiscordWebhookExtension)
 
-        project.tasks.create("screamCompile").dependsOn = tasks
-
-        project.tasks.create("allowJavadocUpload") {
-            if (project.tasks.findByName("uploadJavadoc") != null) {
-                dependsOn("uploadJavadoc")
-            }
+        project.tasks.register("screamCompile") {
+            it.setDependsOn(tasks)
         }
-    }
 
-    def static recursiveClear(ChannelSftp sftpChannel) {
-        sftpChannel.ls(".").forEach {
-            if (it.filename == "." || it.filename == "..")
-                return
-            if (it.attrs.dir) {
-                sftpChannel.cd(it.filename)
-                recursiveClear(sftpChannel)
-                sftpChannel.cd("..")
-                sftpChannel.rmdir(it.filename)
-            } else {
-                sftpChannel.rm(it.filename)
+        project.tasks.register("allowJavadocUpload") {
+            if (project.tasks.names.contains("uploadJavadoc")) {
+                it.dependsOn("uploadJavadoc")
             }
         }
     }
-
-    def static recursiveFolderUpload(ChannelSftp channelSftp, File sourceFolder) {
-        sourceFolder.listFiles().each {
-            if (it.isDirectory()) {
-                channelSftp.mkdir(it.getName())
-                channelSftp.cd(it.getName())
-                recursiveFolderUpload(channelSftp, it)
-                channelSftp.cd("..")
-            } else {
-                channelSftp.put(it.getAbsolutePath(), it.getName())
-            }
-        }
-    }
-
 }
\ No newline at end of file
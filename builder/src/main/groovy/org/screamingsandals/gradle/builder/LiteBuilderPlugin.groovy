@@ -9,16 +9,32 @@ import org.gradle.api.plugins.JavaLibraryPlugin
 import org.gradle.api.publish.PublishingExtension
 import org.gradle.api.publish.maven.MavenPublication
 import org.gradle.api.publish.maven.plugins.MavenPublishPlugin
+import org.gradle.api.tasks.bundling.AbstractArchiveTask
+import org.gradle.build.event.BuildEventsListenerRegistry
 import org.screamingsandals.gradle.builder.dependencies.Dependencies
+import org.screamingsandals.gradle.builder.dependencies.WarmDependencyCacheTask
 import org.screamingsandals.gradle.builder.maven.GitlabRepository
 import org.screamingsandals.gradle.builder.maven.NexusRepository
+import org.screamingsandals.gradle.builder.repositories.DependencyMirror
 import org.screamingsandals.gradle.builder.repositories.Repositories
+import org.screamingsandals.gradle.builder.repositories.RepositoryContent
+import org.screamingsandals.gradle.metrics.BuildMetricsService
 import io.freefair.gradle.plugins.lombok.LombokPlugin
 
+import javax.inject.Inject
+
 class LiteBuilderPlugin implements Plugin<Project> {
+    private final BuildEventsListenerRegistry eventsListenerRegistry
+
+    @Inject
+    LiteBuilderPlugin(BuildEventsListenerRegistry eventsListenerRegistry) {
+        this.eventsListenerRegistry = eventsListenerRegistry
+    }
 
     @Override
     void apply(Project project) {
+        BuildMetricsService.register(project, eventsListenerRegistry)
+
         def ciCdOptimized = System.getenv("OPTIMIZE_FOR_CI_CD") == "1"
 
         project.apply {
@@ -26,11 +42,19 @@ class LiteBuilderPlugin implements Plugin<Project> {
             plugin JavaLibraryPlugin.class
         }
 
+        // stable archive hashes, so unchanged publications are recognized and skipped
+        project.tasks.withType(AbstractArchiveTask).configureEach {
+            it.preserveFileTimestamps = false
+            it.reproducibleFileOrder = true
+        }
+
         Repositories.registerRepositoriesMethods(project)
+        RepositoryContent.applyContentFilters(project)
         Dependencies.registerDependenciesMethods(project)
+        project.tasks.register("warmDependencyCache", WarmDependencyCacheTask)
 
         project.repositories {
-            mavenCentral()
+            DependencyMirror.repository(project) ?: mavenCentral()
         }
 
         project.dependencies.ext['screaming'] = { String lib, String version ->
@@ -48,25 +72,34 @@ class LiteBuilderPlugin implements Plugin<Project> {
                     it.classifier = ""
                 }
 
+                // resolved into plain values so the pom generation doesn't hold the project (configuration cache)
+                def providedDependencies = project.provider {
+                    project.configurations.compileOnly.dependencies.findAll {
+                        !(it instanceof SelfResolvingDependency)
+                    }.collect { [it.group, it.name, it.version] }
+                }
+                def compileDependencies = project.provider {
+                    if (project.tasks.names.contains("shadowJar")) {
+                        return []
+                    }
+                    project.configurations.api.dependencies.collect { [it.group, it.name, it.version] }
+                }
+
                 it.pom.withXml {
                     def dependenciesNode = asNode().appendNode("dependencies")
-                    project.configurations.compileOnly.dependencies.each {
-                        if (!(it instanceof SelfResolvingDependency)) {
-                            def dependencyNode = dependenciesNode.appendNode('dependency')
-                            dependencyNode.appendNode('groupId', it.group)
-                            dependencyNode.appendNode('artifactId', it.name)
-                            dependencyNode.appendNode('version', it.version)
-                            dependencyNode.appendNode('scope', 'provided')
-                        }
+                    providedDependencies.get().each {
+                        def dependencyNode = dependenciesNode.appendNode('dependency')
+                        dependencyNode.appendNode('groupId', it[0])
+                        dependencyNode.appendNode('artifactId', it[1])
+                        dependencyNode.appendNode('version', it[2])
+                        dependencyNode.appendNode('scope', 'provided')
                     }
-                    if (!project.tasks.findByName("shadowJar")) {
-                        project.configurations.api.dependencies.each {
-                            def dependencyNode = dependenciesNode.appendNode('dependency')
-                            dependencyNode.appendNode('groupId', it.group)
-                            dependencyNode.appendNode('artifactId', it.name)
-                            dependencyNode.appendNode('version', it.version)
-                            dependencyNode.appendNode('scope', 'compile')
-                        }
+                    compileDependencies.get().each {
+                        def dependencyNode = dependenciesNode.appendNode('dependency')
+                        dependencyNode.appendNode('groupId', it[0])
+                        dependencyNode.appendNode('artifactId', it[1])
+                        dependencyNode.appendNode('version', it[2])
+                        dependencyNode.appendNode('scope', 'compile')
                     }
                 }
             }
@@ -76,8 +109,10 @@ class LiteBuilderPlugin implements Plugin<Project> {
                     plugin ShadowPlugin.class
                 }
 
-                project.tasks.getByName("screamCompile").dependsOn -= "build"
-                project.tasks.getByName("screamCompile").dependsOn += "shadowJar"
+                project.tasks.named("screamCompile").configure {
+                    it.dependsOn -= "build"
+                    it.dependsOn += "shadowJar"
+                }
 
                 maven.each {
                     it.getArtifacts().removeIf {
@@ -132,7 +167,9 @@ class LiteBuilderPlugin implements Plugin<Project> {
             tasks.add("publish")
         }
 
-        project.tasks.create("screamCompile").dependsOn = tasks
+        project.tasks.register("screamCompile") {
+            it.setDependsOn(tasks)
+        }
     }
 
 }
\ No newline at end of file
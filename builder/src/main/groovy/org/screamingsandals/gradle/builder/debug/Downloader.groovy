@@ -0,0 +1,130 @@
+package org.screamingsandals.gradle.builder.debug
+
+import java.nio.ByteBuffer
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+class Downloader {
+    static final int BUFFER_SIZE = 1 << 20
+
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>()
+
+    int connectTimeout = 15_000
+    int readTimeout = 30_000
+    int maxAttempts = 5
+    // bytes received over the network, resumed downloads only count what was actually transferred
+    final AtomicLong downloadedBytes = new AtomicLong()
+
+    File download(String url, File target, String expectedSha256) {
+        def part = new File(target.parentFile, target.name + ".part")
+        target.parentFile.mkdirs()
+
+        synchronized (LOCKS.computeIfAbsent(part.absolutePath, { new Object() })) {
+            try (def lockChannel = FileChannel.open(new File(target.parentFile, target.name + ".lock").toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)
+                 def ignored = lockChannel.lock()) {
+                if (target.exists()) {
+                    return target // downloaded by someone else in the meantime
+                }
+
+                for (int attempt = 1; ; attempt++) {
+                    try {
+                        fetch(url, part.toPath())
+                        break
+                    } catch (IOException exception) {
+                        if (attempt >= maxAttempts) {
+                            throw new IOException("Can't download $url after $attempt attempts", exception)
+                        }
+                        println "Download of $url interrupted (${exception.message}), resuming"
+                    }
+                }
+
+                def actual = sha256(part.toPath())
+                if (expectedSha256 != null && actual != expectedSha256) {
+                    Files.delete(part.toPath())
+                    throw new IOException("Checksum mismatch for $url: expected $expectedSha256, got $actual")
+                }
+
+                moveAtomically(part.toPath(), target.toPath())
+            }
+        }
+        return target
+    }
+
+    private void fetch(String url, Path part) {
+        def existing = Files.exists(part) ? Files.size(part) : 0L
+
+        def connection = (HttpURLConnection) new URL(url).openConnection()
+        connection.connectTimeout = connectTimeout
+        connection.readTimeout = readTimeout
+        if (existing > 0) {
+            connection.setRequestProperty("Range", "bytes=$existing-")
+        }
+
+        try {
+            def code = connection.responseCode
+            if (code == 416 && existing > 0) {
+                return // the part file already contains everything, the checksum decides
+            }
+            if (code == HttpURLConnection.HTTP_OK) {
+                existing = 0 // server ignored the range, start over
+            } else if (code != HttpURLConnection.HTTP_PARTIAL) {
+                throw new IOException("Unexpected response $code for $url")
+            }
+
+            def length = connection.contentLengthLong
+            def expectedSize = length >= 0 ? existing + length : -1L
+
+            try (def source = Channels.newChannel(connection.inputStream)
+                 def channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                channel.truncate(existing)
+                channel.position(existing)
+
+                def buffer = ByteBuffer.allocateDirect(BUFFER_SIZE)
+                int read
+                while ((read = source.read(buffer)) >= 0) {
+                    downloadedBytes.addAndGet(read)
+                    buffer.flip()
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer)
+                    }
+                    buffer.clear()
+                }
+                channel.force(false)
+
+                if (expectedSize >= 0 && channel.size() < expectedSize) {
+                    throw new IOException("connection closed after ${channel.size()} of $expectedSize bytes")
+                }
+            }
+        } finally {
+            connection.disconnect()
+        }
+    }
+
+    static String sha256(Path file) {
+        def digest = MessageDigest.getInstance("SHA-256")
+        try (def channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            def buffer = ByteBuffer.allocateDirect(BUFFER_SIZE)
+            while (channel.read(buffer) >= 0) {
+                buffer.flip()
+                digest.update(buffer)
+                buffer.clear()
+            }
+        }
+        return digest.digest().encodeHex().toString()
+    }
+
+    static void moveAtomically(Path source, Path target) {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE)
+        } catch (IOException ignored) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING)
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.screamingsandals.gradle.builder.debug
+
+class PaperBuild implements Serializable {
+    static final API_URL = "https://api.papermc.io/v2/projects/paper"
+
+    String version
+    int build
+    String downloadName
+    String sha256
+
+    String getDownloadUrl() {
+        return "$API_URL/versions/$version/builds/$build/downloads/$downloadName"
+    }
+
+    @Override
+    String toString() {
+        return "paper $version build $build"
+    }
+}
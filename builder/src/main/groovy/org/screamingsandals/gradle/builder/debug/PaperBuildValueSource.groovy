@@ -0,0 +1,35 @@
+package org.screamingsandals.gradle.builder.debug
+
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.provider.ValueSource
+import org.gradle.api.provider.ValueSourceParameters
+
+abstract class PaperBuildValueSource implements ValueSource<PaperBuild, Parameters> {
+    interface Parameters extends ValueSourceParameters {
+        Property<String> getVersion()
+
+        DirectoryProperty getCacheDirectory()
+
+        Property<Integer> getMaxAgeMinutes()
+
+        Property<Boolean> getRefresh()
+    }
+
+    @Override
+    PaperBuild obtain() {
+        def version = parameters.version.get()
+        def cache = new ServerJarCache(parameters.cacheDirectory.get().asFile)
+
+        if (!parameters.refresh.get()) {
+            def known = cache.latestKnown(version, parameters.maxAgeMinutes.get() * 60_000L)
+            if (known != null) {
+                return known
+            }
+        }
+
+        def latest = TestServerUtils.resolveLatestBuild(version)
+        cache.remember(latest)
+        return latest
+    }
+}
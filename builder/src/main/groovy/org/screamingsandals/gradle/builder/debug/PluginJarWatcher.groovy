@@ -0,0 +1,128 @@
+package org.screamingsandals.gradle.builder.debug
+
+import org.gradle.api.logging.Logger
+import org.gradle.api.logging.Logging
+
+import java.nio.file.ClosedWatchServiceException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardWatchEventKinds
+import java.nio.file.WatchService
+import java.util.concurrent.TimeUnit
+import java.util.zip.ZipFile
+
+class PluginJarWatcher implements Closeable {
+    static final long SETTLE_MILLIS = 500
+    static final int PUSH_ATTEMPTS = 5
+
+    private static final Logger LOGGER = Logging.getLogger(PluginJarWatcher)
+
+    private final Path source
+    private final Path target
+    private final Closure onPushed
+    private final WatchService watchService
+    private String pushedStamp
+
+    PluginJarWatcher(Path source, Path target, Closure onPushed) {
+        this.source = source.toAbsolutePath()
+        this.target = target
+        this.onPushed = onPushed
+        Files.createDirectories(this.source.parent)
+        this.watchService = this.source.fileSystem.newWatchService()
+    }
+
+    void push() {
+        def stamp = stamp()
+        if (stamp == null || stamp == pushedStamp) {
+            return
+        }
+
+        Files.createDirectories(target.parent)
+        def temp = Files.createTempFile(target.parent, target.fileName.toString(), ".tmp")
+        try {
+            Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING)
+            // the server keeps the old jar open, so it is replaced instead of overwritten
+            Downloader.moveAtomically(temp, target)
+        } finally {
+            Files.deleteIfExists(temp)
+        }
+        pushedStamp = stamp
+    }
+
+    void start() {
+        source.parent.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY)
+
+        def thread = new Thread({
+            try {
+                while (true) {
+                    def key = watchService.take()
+                    def touched = key.pollEvents().any { it.context() == source.fileName }
+                    key.reset()
+                    if (!touched) {
+                        continue
+                    }
+
+                    // let the build finish writing the jar
+                    while (true) {
+                        def next = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)
+                        if (next == null) {
+                            break
+                        }
+                        next.pollEvents()
+                        next.reset()
+                    }
+
+                    if (isCompleteJar()) {
+                        def previous = pushedStamp
+                        tryPush()
+                        if (pushedStamp != previous) {
+                            onPushed()
+                        }
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException ignored) {
+                // server stopped
+            }
+        }, "test-server-plugin-watcher")
+        thread.daemon = true
+        thread.start()
+    }
+
+    // the server may hold the jar for a moment, a failed push is retried and never stops the watcher
+    private void tryPush() throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                push()
+                return
+            } catch (IOException exception) {
+                if (attempt >= PUSH_ATTEMPTS) {
+                    LOGGER.warn("Can't push $source to $target ($exception), waiting for the next change")
+                    return
+                }
+                LOGGER.info("Pushing $source failed ($exception), retrying")
+                Thread.sleep(SETTLE_MILLIS)
+            }
+        }
+    }
+
+    private boolean isCompleteJar() {
+        try (def ignored = new ZipFile(source.toFile())) {
+            return true
+        } catch (IOException ignored) {
+            return false
+        }
+    }
+
+    private String stamp() {
+        if (!Files.exists(source)) {
+            return null
+        }
+        return "${Files.size(source)}:${Files.getLastModifiedTime(source).toMillis()}"
+    }
+
+    @Override
+    void close() {
+        watchService.close()
+    }
+}
@@ -0,0 +1,107 @@
+package org.screamingsandals.gradle.builder.debug
+
+import org.gradle.api.DefaultTask
+import org.gradle.api.GradleException
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.provider.ListProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.services.ServiceReference
+import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.Optional
+import org.gradle.api.tasks.TaskAction
+import org.screamingsandals.gradle.metrics.BuildMetricsService
+
+import java.util.concurrent.ExecutorCompletionService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+abstract class ProvisionTestServersTask extends DefaultTask {
+    @Internal
+    abstract ListProperty<Map<String, String>> getServers()
+    @Internal
+    abstract Property<Integer> getMaxConcurrency()
+    @Internal
+    abstract DirectoryProperty getTestEnvironmentDirectory()
+    @Internal
+    abstract DirectoryProperty getCacheDirectory()
+    @ServiceReference(BuildMetricsService.NAME)
+    @Optional
+    abstract Property<BuildMetricsService> getMetrics()
+
+    ProvisionTestServersTask() {
+        getMaxConcurrency().convention(4)
+        getTestEnvironmentDirectory().convention(project.layout.projectDirectory.dir("test-environment"))
+        getCacheDirectory().convention(project.layout.dir(project.provider { ServerJarCache.defaultRoot(project.gradle.gradleUserHomeDir) }))
+    }
+
+    def server(String subDirectory, String version) {
+        getServers().add([subDirectory: subDirectory, version: version])
+    }
+
+    @TaskAction
+    def run() {
+        def servers = getServers().get()
+        if (servers.isEmpty()) {
+            return
+        }
+
+        def downloader = new Downloader()
+        def cache = new ServerJarCache(getCacheDirectory().get().asFile, downloader)
+        def testEnvironment = getTestEnvironmentDirectory().get().asFile
+        def directories = servers.collect { new File(testEnvironment, "$it.subDirectory/$it.version") }
+
+        def threadCounter = new AtomicInteger()
+        def executor = Executors.newFixedThreadPool(Math.max(1, Math.min(getMaxConcurrency().get(), servers.size()))) {
+            def thread = new Thread(it, "provisionTestServers-${threadCounter.incrementAndGet()}")
+            thread.daemon = true
+            return thread
+        }
+
+        def start = System.nanoTime()
+        try {
+            def completion = new ExecutorCompletionService<Map<String, Object>>(executor)
+            servers.eachWithIndex { server, index ->
+                completion.submit {
+                    def downloaded = null
+                    try {
+                        TestServerUtils.provisionServer(directories[index], server.version, true, cache) {
+                            downloaded = it
+                        }
+                    } catch (Exception exception) {
+                        return [server: server, failure: exception]
+                    }
+                    return [server: server, downloaded: downloaded]
+                }
+            }
+
+            def failures = []
+            servers.size().times { done ->
+                def result = completion.take().get()
+                def server = result.server as Map<String, String>
+                def state
+                if (result.failure != null) {
+                    failures.add(result.failure)
+                    state = "failed (${result.failure})"
+                } else if (result.downloaded != null) {
+                    state = "downloaded $result.downloaded"
+                } else {
+                    state = 'up to date'
+                }
+                logger.lifecycle("[${done + 1}/${servers.size()}] $server.subDirectory $server.version: $state")
+            }
+
+            logger.lifecycle("Provisioned ${servers.size() - failures.size()} of ${servers.size()} test servers in ${(System.nanoTime() - start).intdiv(1_000_000)} ms")
+
+            if (!failures.isEmpty()) {
+                def exception = new GradleException("Failed to provision ${failures.size()} test server(s)", failures.first() as Throwable)
+                failures.drop(1).each { exception.addSuppressed(it as Throwable) }
+                throw exception
+            }
+        } finally {
+            executor.shutdownNow()
+            if (metrics.present) {
+                metrics.get().downloaded(downloader.downloadedBytes.get())
+            }
+        }
+    }
+}
@@ -1,49 +1,73 @@
 package org.screamingsandals.gradle.builder.debug
 
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.file.RegularFileProperty
+import org.gradle.api.provider.MapProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.services.ServiceReference
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.InputFile
 import org.gradle.api.tasks.Internal
 import org.gradle.api.tasks.JavaExec
+import org.gradle.api.tasks.Optional
+import org.gradle.api.tasks.PathSensitive
+import org.gradle.api.tasks.PathSensitivity
+import org.screamingsandals.gradle.metrics.BuildMetricsService
 
 import java.nio.file.Files
 import java.nio.file.Path
 import java.nio.file.StandardCopyOption
 
-class RunTestServerTask extends JavaExec {
+abstract class RunTestServerTask extends JavaExec {
+    @Input
+    abstract Property<String> getVersion()
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    abstract RegularFileProperty getPluginJar()
+    @Input
+    abstract MapProperty<String, String> getServerProperties()
     @Internal
-    String version
+    abstract Property<String> getSubDirectory()
     @Internal
-    Path pluginJar
+    abstract DirectoryProperty getTestServerDirectory()
     @Internal
-    Map<String, String> properties
+    abstract DirectoryProperty getCacheDirectory()
+    @ServiceReference(BuildMetricsService.NAME)
+    @Optional
+    abstract Property<BuildMetricsService> getMetrics()
     @Internal
-    String subDirectory
+    abstract Property<Boolean> getHotReload()
+    @Internal
+    abstract Property<String> getReloadCommand()
 
     RunTestServerTask() {
         super()
         dependsOn('screamCompile')
         standardInput = System.in
-    }
-
-    def setVersion(String version) {
-        this.version = version
-    }
-
-    def setPluginJar(Path pluginJar) {
-        this.pluginJar = pluginJar
-    }
-
-    def setProperties(Map<String, String> map) {
-        this.properties = map
-    }
-
-    def setSubDirectory(String subDirectory) {
-        this.subDirectory = subDirectory
+        getHotReload().convention(false)
+        getReloadCommand().convention("reload confirm")
+        getCacheDirectory().convention(project.layout.dir(project.provider { ServerJarCache.defaultRoot(project.gradle.gradleUserHomeDir) }))
+        getTestServerDirectory().convention(project.layout.projectDirectory.dir(getSubDirectory().zip(getVersion()) { subDirectory, version ->
+            "test-environment/$subDirectory/$version".toString()
+        }))
     }
 
     @Override
     void exec() {
-        def testServerDirectory = project.file("test-environment/$subDirectory/$version")
-
-        def serverJar = TestServerUtils.prepareServer(testServerDirectory, version, false)
+        def version = getVersion().get()
+        def pluginJar = getPluginJar().get().asFile.toPath()
+        def properties = new HashMap<String, String>(getServerProperties().get())
+        def testServerDirectory = getTestServerDirectory().get().asFile
+
+        def downloader = new Downloader()
+        def serverJar
+        try {
+            serverJar = TestServerUtils.prepareServer(testServerDirectory, version, false, new ServerJarCache(getCacheDirectory().get().asFile, downloader))
+        } finally {
+            if (metrics.present) {
+                metrics.get().downloaded(downloader.downloadedBytes.get())
+            }
+        }
 
         def eulaTxt = new File(testServerDirectory, "eula.txt")
         if (!eulaTxt.exists()) {
@@ -52,24 +76,17 @@ class RunTestServerTask extends JavaExec {
         }
 
         println 'Preparing server.properties'
-        def serverProperties = new File(testServerDirectory, "server.properties")
-        def props = new Properties()
-        if (serverProperties.exists()) {
-            props.load(serverProperties.newDataInputStream())
-        }
         if (version.matches("1\\.(\\d|10|11)\\..*")) {
             properties['use-native-transport'] = "false"
         }
-        def needsToBeSaved = false
-        properties.each {
-            if (props.hasProperty(it.key) || props.getProperty(it.key) != it.value) {
-                props.setProperty(it.key, it.value)
-                needsToBeSaved = true
+        def changes = new ServerPropertiesReconciler(testServerDirectory).reconcile(properties)
+        if (changes.isEmpty()) {
+            println 'server.properties is up to date'
+        } else {
+            changes.each {
+                println "server.properties: $it"
             }
         }
-        if (needsToBeSaved) {
-            props.store(serverProperties.newDataOutputStream(), null)
-        }
 
         println 'Preparing plugin'
         def plugins = new File(testServerDirectory, "plugins")
@@ -77,20 +94,55 @@ class RunTestServerTask extends JavaExec {
             plugins.mkdirs()
         }
 
+        def hotReload = getHotReload().get()
+        Path pushedJar = null
         if (version.matches(/1\.(([0-9]|1[0-5])(\..*)?$|16(\.[0-4])?$)/)) { // old versions
-            Files.copy(pluginJar, testServerDirectory.toPath().resolve("plugins/debugPlugin.jar"), StandardCopyOption.REPLACE_EXISTING)
+            if (hotReload) {
+                pushedJar = testServerDirectory.toPath().resolve("plugins/debugPlugin.jar")
+            } else {
+                Files.copy(pluginJar, testServerDirectory.toPath().resolve("plugins/debugPlugin.jar"), StandardCopyOption.REPLACE_EXISTING)
+            }
         } else {
             // make sure plugins/debugPlugin.jar doesn't exist anymore
             if (Files.exists(testServerDirectory.toPath().resolve("plugins/debugPlugin.jar"))) {
                 Files.delete(testServerDirectory.toPath().resolve("plugins/debugPlugin.jar"))
             }
 
-            args("-add-plugin=${pluginJar.toAbsolutePath().toString()}")
+            if (hotReload) {
+                // the build output can't be loaded directly, it gets rewritten while the server is running
+                pushedJar = testServerDirectory.toPath().resolve("dev-plugins/debugPlugin.jar")
+                args("-add-plugin=${pushedJar.toAbsolutePath().toString()}")
+            } else {
+                args("-add-plugin=${pluginJar.toAbsolutePath().toString()}")
+            }
         }
 
         classpath(serverJar)
         setWorkingDir(testServerDirectory)
 
-        super.exec()
+        if (!hotReload) {
+            super.exec()
+            return
+        }
+
+        def reloadCommand = getReloadCommand().get()
+        def console = new ServerConsoleInput()
+        console.forward(System.in)
+        standardInput = console
+
+        def watcher = new PluginJarWatcher(pluginJar, pushedJar, {
+            println "Plugin jar changed, sending '$reloadCommand' to the server"
+            console.send(reloadCommand)
+        })
+        watcher.push()
+        watcher.start()
+        println "Watching $pluginJar, rebuild it (e.g. with a continuous screamCompile) to reload the plugin"
+
+        try {
+            super.exec()
+        } finally {
+            watcher.close()
+            console.close()
+        }
     }
 }
@@ -0,0 +1,87 @@
+package org.screamingsandals.gradle.builder.debug
+
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.LinkedBlockingQueue
+
+class ServerConsoleInput extends InputStream {
+    private static final byte[] EOF = new byte[0]
+    static final long POLL_MILLIS = 100
+
+    private final LinkedBlockingQueue<byte[]> queue = new LinkedBlockingQueue<>()
+    private byte[] current = new byte[0]
+    private int position
+    private volatile boolean closed
+    private Thread forwarder
+
+    // a read blocked on System.in can't be interrupted, so the input is polled and the thread ends once this is closed
+    void forward(InputStream input) {
+        forwarder = new Thread({
+            def buffer = new byte[1024]
+            try {
+                while (!closed) {
+                    def available = input.available()
+                    if (available <= 0) {
+                        Thread.sleep(POLL_MILLIS)
+                        continue
+                    }
+                    def read = input.read(buffer, 0, Math.min(available, buffer.length))
+                    if (read < 0) {
+                        break
+                    }
+                    if (read > 0) {
+                        queue.put(Arrays.copyOf(buffer, read))
+                    }
+                }
+            } catch (IOException | InterruptedException ignored) {
+                // nothing to forward anymore, commands can still be sent
+            }
+        }, "test-server-console")
+        forwarder.daemon = true
+        forwarder.start()
+    }
+
+    void send(String command) {
+        if (!closed) {
+            queue.put("$command\n".getBytes(StandardCharsets.UTF_8))
+        }
+    }
+
+    @Override
+    int read() throws IOException {
+        def single = new byte[1]
+        def read = read(single, 0, 1)
+        return read < 0 ? -1 : single[0] & 0xFF
+    }
+
+    @Override
+    int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0
+        }
+        while (position >= current.length) {
+            if (current.is(EOF)) {
+                return -1
+            }
+            try {
+                current = queue.take()
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt()
+                return -1
+            }
+            position = 0
+        }
+        def count = Math.min(len, current.length - position)
+        System.arraycopy(current, position, b, off, count)
+        position += count
+        return count
+    }
+
+    @Override
+    void close() {
+        if (!closed) {
+            closed = true
+            queue.put(EOF)
+            forwarder?.interrupt()
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.screamingsandals.gradle.builder.debug
+
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+
+class ServerJarCache {
+    private final File root
+    private final Downloader downloader
+
+    ServerJarCache(File root, Downloader downloader = new Downloader()) {
+        this.root = root
+        this.downloader = downloader
+    }
+
+    static ServerJarCache forGradleUserHome(File gradleUserHome) {
+        return new ServerJarCache(defaultRoot(gradleUserHome))
+    }
+
+    static File defaultRoot(File gradleUserHome) {
+        return new File(gradleUserHome, "caches/screaming-plugin-builder/test-servers/paper")
+    }
+
+    File getRoot() {
+        return root
+    }
+
+    File jarOf(PaperBuild build) {
+        return new File(root, "$build.version/$build.build/${build.sha256}.jar")
+    }
+
+    PaperBuild latestKnown(String version, long maxAgeMillis = Long.MAX_VALUE) {
+        def file = new File(root, "$version/latest.properties")
+        if (!file.exists() || System.currentTimeMillis() - file.lastModified() > maxAgeMillis) {
+            return null
+        }
+
+        def props = new Properties()
+        file.withInputStream { props.load(it) }
+        if (!props.containsKey('build') || !props.containsKey('sha256')) {
+            return null
+        }
+        return new PaperBuild(
+                version: version,
+                build: props.getProperty('build') as int,
+                downloadName: props.getProperty('downloadName'),
+                sha256: props.getProperty('sha256')
+        )
+    }
+
+    void remember(PaperBuild build) {
+        def file = new File(root, "$build.version/latest.properties")
+        file.parentFile.mkdirs()
+
+        def props = new Properties()
+        props.setProperty('build', build.build as String)
+        props.setProperty('downloadName', build.downloadName)
+        props.setProperty('sha256', build.sha256)
+
+        def temp = File.createTempFile("latest", ".tmp", file.parentFile)
+        try {
+            temp.withOutputStream { props.store(it, null) }
+            Downloader.moveAtomically(temp.toPath(), file.toPath())
+        } finally {
+            temp.delete()
+        }
+    }
+
+    File obtain(PaperBuild build) {
+        def jar = jarOf(build)
+        if (jar.exists()) {
+            return jar
+        }
+
+        return downloader.download(build.downloadUrl, jar, build.sha256)
+    }
+
+    static void place(File cached, File target) {
+        def targetPath = target.toPath()
+        if (Files.exists(targetPath)) {
+            if (Files.isSameFile(cached.toPath(), targetPath)) {
+                return
+            }
+            Files.delete(targetPath)
+        }
+
+        try {
+            Files.createLink(targetPath, cached.toPath())
+        } catch (IOException | UnsupportedOperationException ignored) {
+            // different file store or no hard link support
+            Files.copy(cached.toPath(), targetPath, StandardCopyOption.REPLACE_EXISTING)
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.screamingsandals.gradle.builder.debug
+
+import java.nio.charset.StandardCharsets
+import java.security.MessageDigest
+
+class ServerPropertiesReconciler {
+    private final File serverProperties
+    private final File fingerprintFile
+
+    ServerPropertiesReconciler(File testServerDirectory) {
+        this.serverProperties = new File(testServerDirectory, "server.properties")
+        this.fingerprintFile = new File(testServerDirectory, ".server.properties.fingerprint")
+    }
+
+    List<String> reconcile(Map<String, String> desired) {
+        def desiredHash = hash(desired)
+        if (fingerprintFile.exists() && fingerprintFile.text == fingerprint(desiredHash)) {
+            return []
+        }
+
+        def props = new Properties()
+        if (serverProperties.exists()) {
+            serverProperties.withInputStream { props.load(it) }
+        }
+
+        def changes = []
+        new TreeMap<String, String>(desired).each { key, value ->
+            if (!props.containsKey(key) || props.getProperty(key) != value) {
+                changes.add(props.containsKey(key) ? "$key: ${props.getProperty(key)} -> $value".toString() : "$key: $value".toString())
+                props.setProperty(key, value)
+            }
+        }
+
+        if (!changes.isEmpty()) {
+            serverProperties.parentFile.mkdirs()
+            def temp = File.createTempFile("server", ".properties.tmp", serverProperties.parentFile)
+            try {
+                temp.withOutputStream { props.store(it, null) }
+                Downloader.moveAtomically(temp.toPath(), serverProperties.toPath())
+            } finally {
+                temp.delete()
+            }
+        }
+
+        fingerprintFile.text = fingerprint(desiredHash)
+        return changes
+    }
+
+    private String fingerprint(String desiredHash) {
+        return "$desiredHash ${serverProperties.length()} ${serverProperties.lastModified()}"
+    }
+
+    private static String hash(Map<String, String> desired) {
+        def digest = MessageDigest.getInstance("SHA-256")
+        new TreeMap<String, String>(desired).each { key, value ->
+            digest.update("$key=$value\n".getBytes(StandardCharsets.UTF_8))
+        }
+        return digest.digest().encodeHex().toString()
+    }
+}
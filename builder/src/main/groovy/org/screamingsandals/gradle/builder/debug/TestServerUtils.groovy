@@ -3,37 +3,59 @@ package org.screamingsandals.gradle.builder.debug
 import com.google.gson.Gson
 
 class TestServerUtils {
-    def static prepareServer(File testServerDirectory, String version, boolean forceUpdate) {
+    def static prepareServer(File testServerDirectory, String version, boolean forceUpdate, ServerJarCache cache) {
+        println 'Preparing server.jar'
+        return provisionServer(testServerDirectory, version, forceUpdate, cache) {
+            println "Downloading $it"
+        }
+    }
+
+    def static provisionServer(File testServerDirectory, String version, boolean forceUpdate, ServerJarCache cache, Closure onDownload = {}) {
         if (!testServerDirectory.exists()) {
             testServerDirectory.mkdirs()
         }
 
-        println 'Preparing server.jar'
         def serverJar = new File(testServerDirectory, "server.jar")
         if (!serverJar.exists() || forceUpdate) {
-            def latestBuild = 0
-            new URL("https://api.papermc.io/v2/projects/paper/versions/$version").newInputStream().withReader {
-                def map = new Gson().fromJson(it, Map.class)
-                latestBuild = Collections.max(map.get("builds") as List) as int
+            def build = forceUpdate ? null : cache.latestKnown(version)
+            if (build == null) {
+                build = resolveLatestBuild(version)
+                cache.remember(build)
             }
 
-            if (latestBuild == 0) {
-                throw new RuntimeException("Can't obtain build number for version $version")
+            if (!cache.jarOf(build).exists()) {
+                onDownload(build)
             }
+            ServerJarCache.place(cache.obtain(build), serverJar)
+        }
 
-            def downloadName = ""
-            new URL("https://api.papermc.io/v2/projects/paper/versions/$version/builds/$latestBuild").newInputStream().withReader {
-                def map = new Gson().fromJson(it, Map.class)
-                downloadName = ((map.get("downloads") as Map).get("application") as Map).get("name") as String
-            }
+        return serverJar
+    }
 
-            if (downloadName == "") {
-                throw new RuntimeException("Can't obtain download for version $version build $latestBuild")
+    def static resolveLatestBuild(String version) {
+        PaperBuild latest = null
+        new URL("$PaperBuild.API_URL/versions/$version/builds").newInputStream().withReader {
+            def map = new Gson().fromJson(it, Map.class)
+            (map.get("builds") as List<Map>).each {
+                def number = it.get("build") as int
+                if (latest == null || number > latest.build) {
+                    def application = (it.get("downloads") as Map)?.get("application") as Map
+                    if (application != null) {
+                        latest = new PaperBuild(
+                                version: version,
+                                build: number,
+                                downloadName: application.get("name") as String,
+                                sha256: application.get("sha256") as String
+                        )
+                    }
+                }
             }
+        }
 
-            serverJar.withOutputStream { it << new URL("https://api.papermc.io/v2/projects/paper/versions/$version/builds/$latestBuild/downloads/$downloadName").newInputStream() }
+        if (latest == null) {
+            throw new RuntimeException("Can't obtain build number for version $version")
         }
 
-        return serverJar
+        return latest
     }
 }
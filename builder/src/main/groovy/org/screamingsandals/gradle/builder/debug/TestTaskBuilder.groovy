@@ -13,6 +13,7 @@ class TestTaskBuilder {
     private List<String> jvmArgs = []
     private Map<String, String> serverProperties = [:]
     private String subdirectory = "paper"
+    private Integer provisioningConcurrency
 
     TestTaskBuilder(Project project) {
         this.project = project
@@ -58,20 +59,45 @@ class TestTaskBuilder {
         return this
     }
 
+    def provisioningConcurrency(int provisioningConcurrency) {
+        this.provisioningConcurrency = provisioningConcurrency
+        return this
+    }
+
     def build() {
         if (System.getenv("OPTIMIZE_FOR_CI_CD") != "1") {
+            def servers = versions.collect { version -> [subDirectory: this.subdirectory, version: version] }
+            def provisionAction = { ProvisionTestServersTask provision ->
+                provision.servers.addAll(servers)
+                if (this.provisioningConcurrency != null) {
+                    provision.maxConcurrency.set(this.provisioningConcurrency)
+                }
+            }
+            if (this.project.tasks.names.contains("provisionTestServers")) {
+                this.project.tasks.named("provisionTestServers", ProvisionTestServersTask).configure(provisionAction)
+            } else {
+                this.project.tasks.register("provisionTestServers", ProvisionTestServersTask, provisionAction)
+            }
+
             versions.each { version ->
-                this.project.task("updatePaperServer$version", type: UpdateTestServerTask) {
-                    it.version = version
-                    it.subDirectory = this.subdirectory
+                this.project.tasks.register("updatePaperServer$version", UpdateTestServerTask) {
+                    it.version.set(version)
+                    it.subDirectory.set(this.subdirectory)
+                }
+                def runAction = { RunTestServerTask task ->
+                    task.args(this.args)
+                    task.jvmArgs(this.jvmArgs)
+                    task.version.set(version)
+                    if (this.pluginJar != null) {
+                        task.pluginJar.set(this.pluginJar.toFile())
+                    }
+                    task.serverProperties.set(this.serverProperties)
+                    task.subDirectory.set(this.subdirectory)
                 }
-                this.project.task("runPaperServer$version", type: RunTestServerTask) {
-                    args(this.args)
-                    jvmArgs(this.jvmArgs)
-                    it.version = version
-                    it.pluginJar = this.pluginJar
-                    it.properties = this.serverProperties
-                    it.subDirectory = this.subdirectory
+                this.project.tasks.register("runPaperServer$version", RunTestServerTask, runAction)
+                this.project.tasks.register("devPaperServer$version", RunTestServerTask) {
+                    runAction(it)
+                    it.hotReload.set(true)
                 }
             }
         }
@@ -1,27 +1,76 @@
 package org.screamingsandals.gradle.builder.debug
 
 import org.gradle.api.DefaultTask
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.file.RegularFileProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.services.ServiceReference
+import org.gradle.api.tasks.Input
 import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.Optional
+import org.gradle.api.tasks.OutputFile
 import org.gradle.api.tasks.TaskAction
+import org.screamingsandals.gradle.metrics.BuildMetricsService
 
-class UpdateTestServerTask extends DefaultTask {
+abstract class UpdateTestServerTask extends DefaultTask {
+    @Input
+    abstract Property<String> getVersion()
     @Internal
-    String version
+    abstract Property<String> getSubDirectory()
+    @Input
+    abstract Property<Integer> getBuildNumber()
+    @Input
+    abstract Property<String> getSha256()
     @Internal
-    String subDirectory
+    abstract Property<String> getDownloadName()
+    @Internal
+    abstract Property<Integer> getMetadataMaxAgeMinutes()
+    @Internal
+    abstract DirectoryProperty getCacheDirectory()
+    @ServiceReference(BuildMetricsService.NAME)
+    @Optional
+    abstract Property<BuildMetricsService> getMetrics()
+    @OutputFile
+    abstract RegularFileProperty getServerJar()
 
-    def setVersion(String version) {
-        this.version = version
-    }
+    UpdateTestServerTask() {
+        getMetadataMaxAgeMinutes().convention(60)
+        getCacheDirectory().convention(project.layout.dir(project.provider { ServerJarCache.defaultRoot(project.gradle.gradleUserHomeDir) }))
+        getServerJar().convention(project.layout.projectDirectory.file(getSubDirectory().zip(getVersion()) { subDirectory, version ->
+            "test-environment/$subDirectory/$version/server.jar".toString()
+        }))
 
-    def setSubDirectory(String subDirectory) {
-        this.subDirectory = subDirectory
+        def latest = project.providers.of(PaperBuildValueSource) {
+            it.parameters.version.set(getVersion())
+            it.parameters.cacheDirectory.set(getCacheDirectory())
+            it.parameters.maxAgeMinutes.set(getMetadataMaxAgeMinutes())
+            it.parameters.refresh.set(project.gradle.startParameter.refreshDependencies)
+        }
+        getBuildNumber().convention(latest.map { it.build })
+        getSha256().convention(latest.map { it.sha256 })
+        getDownloadName().convention(latest.map { it.downloadName })
     }
 
     @TaskAction
     def run() {
-        def testServerDirectory = project.file("test-environment/$subDirectory/$version")
+        def downloader = new Downloader()
+        def cache = new ServerJarCache(getCacheDirectory().get().asFile, downloader)
+        def build = new PaperBuild(
+                version: getVersion().get(),
+                build: getBuildNumber().get(),
+                downloadName: getDownloadName().get(),
+                sha256: getSha256().get()
+        )
 
-        TestServerUtils.prepareServer(testServerDirectory, version, true)
+        println "Updating server.jar to $build"
+        def serverJar = getServerJar().get().asFile
+        serverJar.parentFile.mkdirs()
+        try {
+            ServerJarCache.place(cache.obtain(build), serverJar)
+        } finally {
+            if (metrics.present) {
+                metrics.get().downloaded(downloader.downloadedBytes.get())
+            }
+        }
     }
 }
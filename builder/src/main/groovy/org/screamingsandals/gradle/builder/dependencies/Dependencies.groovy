@@ -2,8 +2,6 @@ package org.screamingsandals.gradle.builder.dependencies
 
 import org.gradle.api.Project
 
-import static java.lang.reflect.Modifier.isStatic
-
 class Dependencies {
     static final SPIGOT = new Dependency().each {
         it.group = "org.spigotmc"
@@ -146,26 +144,22 @@ class Dependencies {
     static final NUKKIT_X = NUKKIT
 
     def static registerDependenciesMethods(Project project) {
-        Dependencies.class.declaredFields.findAll {
-            isStatic(it.modifiers)
-        }.each {field ->
-            project.dependencies.ext[toCamelCase(field.name)] = { String version = null ->
-               Dependencies[field.name].format(version)
+        project.extensions.create("screamingDeps", ScreamingDependenciesExtension)
+        ScreamingDependenciesExtension.METHODS.each { name, dependency ->
+            project.dependencies.ext[name] = { String version = null ->
+                dependency.format(version)
             }
         }
     }
 
-    static String toCamelCase(String s){
-        def parts = s.split("_")
-        def camelCaseString = ""
-        parts.each {
-            if (camelCaseString.isEmpty()) {
-                camelCaseString += it.toLowerCase()
-            } else {
-                camelCaseString += it.substring(0, 1).toUpperCase() + it.substring(1).toLowerCase()
+    // Returns the registered dependencies by their method names, aliases of the same dependency are included once.
+    static Map<String, Dependency> registered() {
+        def registered = new LinkedHashMap<String, Dependency>()
+        ScreamingDependenciesExtension.METHODS.each { name, dependency ->
+            if (!registered.values().any { it.is(dependency) }) {
+                registered[name] = dependency
             }
         }
-        return camelCaseString
+        return registered
     }
-
 }
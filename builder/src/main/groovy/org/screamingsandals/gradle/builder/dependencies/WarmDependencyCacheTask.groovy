@@ -0,0 +1,160 @@
+package org.screamingsandals.gradle.builder.dependencies
+
+import groovy.xml.XmlSlurper
+import org.gradle.api.DefaultTask
+import org.gradle.api.Project
+import org.gradle.api.artifacts.Configuration
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier
+import org.gradle.api.artifacts.result.ResolvedArtifactResult
+import org.gradle.api.attributes.Bundling
+import org.gradle.api.attributes.Category
+import org.gradle.api.attributes.LibraryElements
+import org.gradle.api.attributes.Usage
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.logging.Logging
+import org.gradle.api.provider.ListProperty
+import org.gradle.api.provider.MapProperty
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.OutputDirectory
+import org.gradle.api.tasks.TaskAction
+import org.gradle.maven.MavenModule
+import org.gradle.maven.MavenPomArtifact
+import org.screamingsandals.gradle.builder.repositories.DependencyMirror
+
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.util.regex.Pattern
+
+abstract class WarmDependencyCacheTask extends DefaultTask {
+    // Key - name of the registered dependency (the same as its method, eg. paper)
+    // Value - version to mirror instead of the default one
+    @Input
+    abstract MapProperty<String, String> getVersions()
+    // Additional coordinates to mirror
+    @Input
+    abstract ListProperty<String> getCoordinates()
+    // Key - path in the mirror
+    // Value - file in the Gradle cache
+    @Input
+    abstract MapProperty<String, String> getEntries()
+    @OutputDirectory
+    abstract DirectoryProperty getMirrorDirectory()
+
+    WarmDependencyCacheTask() {
+        def versions = getVersions()
+        def coordinates = getCoordinates()
+        def project = project
+        // resolved while the task graph is being built, the result is what the configuration cache stores
+        getEntries().set(project.provider { resolve(project, versions.get(), coordinates.get()) })
+        getMirrorDirectory().convention(project.layout.dir(project.provider { DependencyMirror.defaultRoot(project.gradle.gradleUserHomeDir) }))
+    }
+
+    def version(String dependency, String version) {
+        getVersions().put(dependency, version)
+    }
+
+    def coordinate(String coordinate) {
+        getCoordinates().add(coordinate)
+    }
+
+    @TaskAction
+    def run() {
+        def root = getMirrorDirectory().get().asFile.toPath()
+        def copied = 0
+        def entries = getEntries().get()
+        entries.each { path, source ->
+            def target = root.resolve(path)
+            def sourcePath = new File(source).toPath()
+            if (Files.isRegularFile(target) && Files.size(target) == Files.size(sourcePath)) {
+                return
+            }
+            Files.createDirectories(target.parent)
+            Files.copy(sourcePath, target, StandardCopyOption.REPLACE_EXISTING)
+            copied++
+        }
+        logger.lifecycle("Mirrored ${entries.size()} files to $root ($copied new), use it with $DependencyMirror.ENVIRONMENT_VARIABLE=$root")
+    }
+
+    static Map<String, String> resolve(Project project, Map<String, String> versions, List<String> coordinates) {
+        def notations = Dependencies.registered().collect { name, dependency -> dependency.format(versions[name]) } + coordinates
+        def entries = new TreeMap<String, String>()
+        def components = new LinkedHashSet<ModuleComponentIdentifier>()
+
+        // one graph per coordinate, each of them needs its own versions of the transitive dependencies
+        notations.unique().each { notation ->
+            def configuration = project.configurations.detachedConfiguration(project.dependencies.create(notation))
+            configuration.attributes {
+                it.attribute(Usage.USAGE_ATTRIBUTE, project.objects.named(Usage, Usage.JAVA_RUNTIME))
+                it.attribute(Category.CATEGORY_ATTRIBUTE, project.objects.named(Category, Category.LIBRARY))
+                it.attribute(LibraryElements.LIBRARY_ELEMENTS_ATTRIBUTE, project.objects.named(LibraryElements, LibraryElements.JAR))
+                it.attribute(Bundling.BUNDLING_ATTRIBUTE, project.objects.named(Bundling, Bundling.EXTERNAL))
+            }
+            collect(configuration, notation, entries, components)
+        }
+
+        // and what the project itself needs to be built
+        ["compileClasspath", "runtimeClasspath", "annotationProcessor"].each { name ->
+            def configuration = project.configurations.findByName(name)
+            if (configuration == null || !configuration.canBeResolved) {
+                return
+            }
+            collect(configuration, name, entries, components)
+        }
+
+        // poms describe the dependencies, their parents and imported boms are needed to read them
+        def seen = new HashSet<String>()
+        def pending = components.collect { [it.group, it.module, it.version] }
+        while (!pending.isEmpty()) {
+            def query = project.dependencies.createArtifactResolutionQuery()
+            pending.findAll { seen.add(it.join(":")) }.each { query.forModule(it[0], it[1], it[2]) }
+            pending = []
+            query.withArtifacts(MavenModule, MavenPomArtifact).execute().resolvedComponents.each { component ->
+                def id = component.id as ModuleComponentIdentifier
+                component.getArtifacts(MavenPomArtifact).each { pom ->
+                    if (pom instanceof ResolvedArtifactResult) {
+                        entries[mirrorPath(id.group, id.module, id.version, pom.file)] = pom.file.absolutePath
+                        pending.addAll(referencedPoms(pom.file))
+                    }
+                }
+            }
+        }
+        return entries
+    }
+
+    static void collect(Configuration configuration, String description, Map<String, String> entries, Set<ModuleComponentIdentifier> components) {
+        def artifacts = configuration.incoming.artifactView { it.lenient = true }.artifacts
+        artifacts.failures.each { Logging.getLogger(WarmDependencyCacheTask).warn("Can't mirror $description: $it.message") }
+        artifacts.artifacts.each { artifact ->
+            def id = artifact.id.componentIdentifier
+            if (id instanceof ModuleComponentIdentifier) {
+                entries[mirrorPath(id.group, id.module, id.version, artifact.file)] = artifact.file.absolutePath
+                components.add(id)
+            }
+        }
+    }
+
+    static List<List<String>> referencedPoms(File pom) {
+        def xml = new XmlSlurper().parse(pom)
+        def referenced = []
+        if (!xml.parent.isEmpty() && !xml.parent.version.text().contains('${')) {
+            referenced.add([xml.parent.groupId.text(), xml.parent.artifactId.text(), xml.parent.version.text()])
+        }
+        xml.dependencyManagement.dependencies.dependency.findAll { it.scope.text() == 'import' }.each {
+            // versions coming from properties would need the whole pom hierarchy to be evaluated
+            if (!it.version.text().contains('${')) {
+                referenced.add([it.groupId.text(), it.artifactId.text(), it.version.text()])
+            }
+        }
+        return referenced
+    }
+
+    static String mirrorPath(String group, String module, String version, File file) {
+        // snapshots are cached under their timestamped name, the mirror uses the plain -SNAPSHOT layout
+        def fileVersion = version.endsWith("-SNAPSHOT")
+                ? Pattern.quote(version.substring(0, version.length() - "SNAPSHOT".length())) + "(SNAPSHOT|\\d{8}\\.\\d{6}-\\d+)"
+                : Pattern.quote(version)
+        def matcher = Pattern.compile("^" + Pattern.quote(module + "-") + fileVersion + "(.*)\$").matcher(file.name)
+        def suffix = matcher.matches() ? matcher.group(matcher.groupCount()) : file.name.substring(file.name.lastIndexOf('.'))
+        return "${group.replace('.', '/')}/$module/$version/$module-$version$suffix"
+    }
+}
@@ -0,0 +1,234 @@
+package org.screamingsandals.gradle.builder.javadoc
+
+import com.jcraft.jsch.ChannelSftp
+
+import java.nio.charset.StandardCharsets
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.regex.Pattern
+import java.util.zip.GZIPOutputStream
+
+class JavadocArchiveUpload {
+    static final int BLOCK_SIZE = 512
+    static final int BUFFER_SIZE = 1 << 16
+    static final Pattern RELEASE = ~/^(.+)\.release-\d+$/
+    // swaps a symlink in a scratch directory the way upload() swaps the served tree
+    static final String SWAP_PROBE = 'dir=$(mktemp -d) && ln -s release "$dir/link" && mv -T "$dir/link" "$dir/served"; status=$?; ' +
+            'if [ -n "$dir" ]; then rm -rf "$dir"; fi; exit $status'
+
+    private final SshConnectionPool pool
+    private final File localRoot
+    private final Duration timeout
+
+    JavadocArchiveUpload(SshConnectionPool pool, File localRoot, Duration timeout = Duration.ofMinutes(10)) {
+        this.pool = pool
+        this.localRoot = localRoot
+        this.timeout = timeout
+    }
+
+    // mv -T is GNU coreutils, hosts without it have to use the delta upload of JavadocSync. Checked once per connection
+    boolean isSupportedByHost() {
+        return pool.remember("mv -T") {
+            run(SWAP_PROBE, "Checking for mv -T", new ByteArrayOutputStream(), null) == 0
+        }
+    }
+
+    // streams the whole tree as one tar.gz into a new release directory next to the current directory of the channel.
+    // The current directory becomes a symlink to the release and is swapped with a rename (GNU mv -T), so readers
+    // always see either the old or the new tree. A plain directory from before is moved away once and put back if the link can't replace it.
+    Map<String, Object> upload(ChannelSftp channel) {
+        if (!isSupportedByHost()) {
+            throw new IOException("The javadoc host has no GNU mv -T to swap the tree with, upload it with JavadocSync instead")
+        }
+        def target = channel.pwd()
+        // cd resolves symlinks, so after the first upload the channel is inside the current release
+        def current = target =~ RELEASE
+        if (current.matches()) {
+            target = current.group(1)
+        }
+        def stamp = System.currentTimeMillis()
+        def parent = target.substring(0, target.lastIndexOf('/')) ?: '/'
+        def name = target.substring(target.lastIndexOf('/') + 1)
+        def releaseName = "${name}.release-$stamp"
+        def release = "$parent/$releaseName"
+        def link = "${target}.link-$stamp"
+        def old = "${target}.old-$stamp"
+
+        def command = "set -e; " +
+                "rm -rf ${quote(release)}; mkdir -p ${quote(release)}; " +
+                "tar xzf - -C ${quote(release)}; " +
+                "previous=; if [ -L ${quote(target)} ]; then previous=\$(readlink ${quote(target)}); fi; " +
+                "ln -sfn ${quote(releaseName)} ${quote(link)}; " +
+                "if [ -d ${quote(target)} ] && [ ! -L ${quote(target)} ]; then mv ${quote(target)} ${quote(old)}; fi; " +
+                "if ! mv -T ${quote(link)} ${quote(target)}; then rm -f ${quote(link)}; if [ -d ${quote(old)} ]; then mv ${quote(old)} ${quote(target)}; fi; exit 1; fi; " +
+                "rm -rf ${quote(old)}; " +
+                // only a release made by an earlier upload is removed, anything else the link pointed to is left alone
+                "case \"\$previous\" in ${quote(name + '.release-')}*) rm -rf ${quote(parent)}/\"\$previous\";; esac"
+
+        def errors = new ByteArrayOutputStream()
+        def files = 0
+        CountingOutputStream bytes = null
+        def status = run(command, "Extracting javadoc archive into $target", errors) { OutputStream input ->
+            bytes = new CountingOutputStream(input)
+            def tar = new BufferedOutputStream(new GZIPOutputStream(bytes, BUFFER_SIZE), BUFFER_SIZE)
+            tar.withCloseable {
+                files = writeTar(it)
+            }
+        }
+
+        if (status != 0) {
+            throw new IOException("Extracting javadoc archive into $target failed with exit status $status: ${errors.toString('UTF-8').trim()}")
+        }
+
+        return [files: files, compressedBytes: bytes.count]
+    }
+
+    // returns the exit status of the command once it ends. Its input is written by the closure, which closes the stream.
+    // The channel is dropped at the timeout, that also stops a write the host doesn't read anymore
+    private int run(String command, String description, OutputStream errors, Closure<?> writeInput) {
+        def timedOut = new AtomicBoolean()
+        def watchdog = new Timer("javadoc upload timeout", true)
+        def exec = pool.borrowExec()
+        try {
+            exec.command = command
+            exec.errStream = errors
+            def input = exec.outputStream
+            exec.connect()
+            watchdog.runAfter((int) timeout.toMillis()) {
+                if (!exec.closed) {
+                    timedOut.set(true)
+                    exec.disconnect()
+                }
+            }
+
+            try {
+                if (writeInput != null) {
+                    writeInput(input)
+                } else {
+                    input.close()
+                }
+                while (!exec.closed) {
+                    Thread.sleep(100)
+                }
+            } catch (IOException exception) {
+                if (!timedOut.get()) {
+                    throw exception
+                }
+            }
+        } finally {
+            watchdog.cancel()
+            exec.disconnect()
+            pool.release(exec)
+        }
+
+        if (timedOut.get()) {
+            throw new IOException("$description didn't finish within ${timeout.toSeconds()} seconds")
+        }
+        return exec.exitStatus
+    }
+
+    int writeTar(OutputStream output) {
+        def manifest = JavadocSync.localManifest(localRoot)
+        def buffer = new byte[BUFFER_SIZE]
+        manifest.keySet().each { path ->
+            def file = new File(localRoot, path)
+            writeHeader(output, path, file.length(), file.lastModified())
+            file.withInputStream { input ->
+                int read
+                while ((read = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, read)
+                }
+            }
+            pad(output, file.length())
+        }
+
+        // keeps the delta mode cheap if the project switches back to it
+        def content = JavadocSync.manifestContent(manifest)
+        writeHeader(output, JavadocSync.MANIFEST_NAME, content.length, System.currentTimeMillis())
+        output.write(content)
+        pad(output, content.length)
+
+        output.write(new byte[BLOCK_SIZE * 2])
+        return manifest.size()
+    }
+
+    static void writeHeader(OutputStream output, String path, long size, long lastModified) {
+        def name = path.getBytes(StandardCharsets.UTF_8)
+        if (name.length > 100) {
+            // GNU long name extension, understood by every tar that is likely to be on the host
+            writeHeader(output, "././@LongLink", 'L' as char, name.length + 1, 0)
+            output.write(name)
+            output.write(0)
+            pad(output, name.length + 1)
+        }
+        writeHeader(output, path, '0' as char, size, lastModified)
+    }
+
+    static void writeHeader(OutputStream output, String path, char type, long size, long lastModified) {
+        def header = new byte[BLOCK_SIZE]
+        def name = path.getBytes(StandardCharsets.UTF_8)
+        System.arraycopy(name, 0, header, 0, Math.min(name.length, 100))
+        octal(header, 100, 8, 0644)
+        octal(header, 108, 8, 0)
+        octal(header, 116, 8, 0)
+        octal(header, 124, 12, size)
+        octal(header, 136, 12, lastModified.intdiv(1000))
+        Arrays.fill(header, 148, 156, (byte) ' ')
+        header[156] = (byte) type
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8)
+
+        long checksum = 0
+        header.each { checksum += (it & 0xff) }
+        octal(header, 148, 7, checksum)
+
+        output.write(header)
+    }
+
+    static void octal(byte[] header, int offset, int length, long value) {
+        def digits = Long.toOctalString(value).padLeft(length - 1, '0').getBytes(StandardCharsets.US_ASCII)
+        System.arraycopy(digits, 0, header, offset, length - 1)
+        header[offset + length - 1] = 0
+    }
+
+    static void pad(OutputStream output, long size) {
+        def remainder = (int) (size % BLOCK_SIZE)
+        if (remainder != 0) {
+            output.write(new byte[BLOCK_SIZE - remainder])
+        }
+    }
+
+    static String quote(String argument) {
+        return "'" + argument.replace("'", "'\\''") + "'"
+    }
+
+    static class CountingOutputStream extends OutputStream {
+        private final OutputStream output
+        long count
+
+        CountingOutputStream(OutputStream output) {
+            this.output = output
+        }
+
+        @Override
+        void write(int b) {
+            output.write(b)
+            count++
+        }
+
+        @Override
+        void write(byte[] b, int off, int len) {
+            output.write(b, off, len)
+            count += len
+        }
+
+        @Override
+        void flush() {
+            output.flush()
+        }
+
+        @Override
+        void close() {
+            output.close()
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.screamingsandals.gradle.builder.javadoc
+
+import org.gradle.api.provider.Property
+import org.gradle.api.services.BuildService
+import org.gradle.api.services.BuildServiceParameters
+
+abstract class JavadocHostService implements BuildService<Parameters>, AutoCloseable {
+    interface Parameters extends BuildServiceParameters {
+        Property<String> getHost()
+        Property<String> getUser()
+        Property<String> getSecret()
+        Property<Integer> getMaxChannels()
+    }
+
+    private SshConnectionPool pool
+
+    synchronized SshConnectionPool getPool() {
+        if (pool == null) {
+            pool = new SshConnectionPool(parameters.host.get(), parameters.user.get(), parameters.secret.get(), 22, parameters.maxChannels.getOrElse(8))
+        }
+        return pool
+    }
+
+    @Override
+    synchronized void close() {
+        pool?.close()
+        pool = null
+    }
+}
@@ -0,0 +1,228 @@
+package org.screamingsandals.gradle.builder.javadoc
+
+import com.jcraft.jsch.ChannelSftp
+import com.jcraft.jsch.SftpException
+
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+
+class JavadocSync {
+    static final String MANIFEST_NAME = ".javadoc-manifest"
+    static final int BUFFER_SIZE = 1 << 16
+
+    private final SshConnectionPool pool
+    private final File localRoot
+    private final int parallelism
+
+    JavadocSync(SshConnectionPool pool, File localRoot, int parallelism = 4) {
+        this.pool = pool
+        this.localRoot = localRoot
+        this.parallelism = Math.max(1, parallelism)
+    }
+
+    // counts of uploaded, deleted and unchanged files, and the uploaded bytes
+    Map<String, Number> sync(ChannelSftp channel) {
+        def remoteRoot = channel.pwd()
+        def local = localManifest(localRoot)
+        def remote = readRemoteManifest(channel, remoteRoot)
+        if (remote == null) {
+            // no manifest yet (first delta upload), every remote file is unknown
+            remote = listRemote(channel, remoteRoot)
+        }
+
+        def upload = local.findAll { path, entry -> remote.get(path) != entry }.keySet().sort()
+        def delete = (remote.keySet() - local.keySet()).sort()
+        if (upload.isEmpty() && delete.isEmpty()) {
+            return [uploaded: 0, deleted: 0, unchanged: local.size(), uploadedBytes: 0L]
+        }
+
+        // the manifest would lie about files that are being replaced if the upload is interrupted
+        removeQuietly(channel, "$remoteRoot/$MANIFEST_NAME")
+
+        def directories = new TreeSet<String>()
+        upload.each { directories.addAll(parents(it)) }
+        directories.each { mkdirs(channel, "$remoteRoot/$it") }
+
+        parallel(channel, upload) { ChannelSftp worker, String path ->
+            worker.put(new File(localRoot, path).absolutePath, "$remoteRoot/$path")
+        }
+
+        // stale files go last so the old pages stay reachable until the new ones are in place
+        parallel(channel, delete) { ChannelSftp worker, String path ->
+            removeQuietly(worker, "$remoteRoot/$path")
+        }
+        def localDirectories = new HashSet<String>()
+        local.keySet().each { localDirectories.addAll(parents(it)) }
+        def staleDirectories = new TreeSet<String>({ a, b -> b.count('/') <=> a.count('/') ?: b <=> a } as Comparator)
+        delete.each { staleDirectories.addAll(parents(it) - localDirectories) }
+        staleDirectories.each {
+            try {
+                channel.rmdir("$remoteRoot/$it")
+            } catch (SftpException ignored) {
+                // not empty, something else lives there
+            }
+        }
+
+        // written last, so it only ever describes a tree the server actually has
+        writeRemoteManifest(channel, remoteRoot, local)
+
+        return [uploaded: upload.size(), deleted: delete.size(), unchanged: local.size() - upload.size(), uploadedBytes: upload.sum(0L) { new File(localRoot, it).length() }]
+    }
+
+    private void parallel(ChannelSftp channel, Collection<String> paths, Closure action) {
+        if (paths.isEmpty()) {
+            return
+        }
+
+        // extra channels are only taken when the pool has them free, so projects uploading at the same time can't starve each other
+        def channels = [channel]
+        while (channels.size() < Math.min(parallelism, paths.size())) {
+            def extra = pool.tryBorrowSftp()
+            if (extra == null) {
+                break
+            }
+            channels.add(extra)
+        }
+
+        def queue = new ConcurrentLinkedQueue<String>(paths)
+        Set<ChannelSftp> finished = ConcurrentHashMap.newKeySet()
+        def executor = Executors.newFixedThreadPool(channels.size())
+        try {
+            def futures = channels.collect { worker ->
+                executor.submit {
+                    String path
+                    while ((path = queue.poll()) != null) {
+                        action(worker, path)
+                    }
+                    finished.add(worker)
+                    return null
+                }
+            }
+            futures.each {
+                try {
+                    it.get()
+                } catch (ExecutionException exception) {
+                    queue.clear()
+                    throw exception.cause
+                }
+            }
+        } finally {
+            executor.shutdownNow()
+            channels.drop(1).each {
+                if (!finished.contains(it)) {
+                    // interrupted or failed in the middle of a transfer, releasing it only returns the permit
+                    it.disconnect()
+                }
+                pool.release(it)
+            }
+        }
+    }
+
+    static Map<String, String> localManifest(File root) {
+        def manifest = new TreeMap<String, String>()
+        def rootPath = root.toPath()
+        root.eachFileRecurse { file ->
+            if (file.isFile()) {
+                def path = rootPath.relativize(file.toPath()).toString().replace(File.separatorChar, '/' as char)
+                manifest.put(path, "${file.length()}:${hash(file)}".toString())
+            }
+        }
+        return manifest
+    }
+
+    static String hash(File file) {
+        def digest = MessageDigest.getInstance("SHA-256")
+        def buffer = new byte[BUFFER_SIZE]
+        file.withInputStream { input ->
+            int read
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read)
+            }
+        }
+        return digest.digest().encodeHex().toString()
+    }
+
+    static Map<String, String> readRemoteManifest(ChannelSftp channel, String remoteRoot) {
+        def manifest = new TreeMap<String, String>()
+        try {
+            channel.get("$remoteRoot/$MANIFEST_NAME").withReader("UTF-8") { reader ->
+                reader.eachLine { line ->
+                    def separator = line.lastIndexOf('\t')
+                    if (separator > 0) {
+                        manifest.put(line.substring(0, separator), line.substring(separator + 1))
+                    }
+                }
+            }
+        } catch (SftpException exception) {
+            if (exception.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                return null
+            }
+            throw exception
+        }
+        return manifest
+    }
+
+    static void writeRemoteManifest(ChannelSftp channel, String remoteRoot, Map<String, String> manifest) {
+        channel.put(new ByteArrayInputStream(manifestContent(manifest)), "$remoteRoot/$MANIFEST_NAME")
+    }
+
+    static byte[] manifestContent(Map<String, String> manifest) {
+        def content = new StringBuilder()
+        manifest.each { path, entry -> content.append(path).append('\t').append(entry).append('\n') }
+        return content.toString().getBytes("UTF-8")
+    }
+
+    static Map<String, String> listRemote(ChannelSftp channel, String remoteRoot, String prefix = "") {
+        def files = new TreeMap<String, String>()
+        channel.ls(prefix.isEmpty() ? remoteRoot : "$remoteRoot/$prefix").each {
+            def entry = it as ChannelSftp.LsEntry
+            if (entry.filename == "." || entry.filename == "..") {
+                return
+            }
+            def path = prefix.isEmpty() ? entry.filename : "$prefix/$entry.filename".toString()
+            if (entry.attrs.dir) {
+                files.putAll(listRemote(channel, remoteRoot, path))
+            } else if (path != MANIFEST_NAME) {
+                // no hash is known for these, so they never match the local manifest
+                files.put(path, "${entry.attrs.size}:".toString())
+            }
+        }
+        return files
+    }
+
+    static List<String> parents(String path) {
+        def parents = []
+        def index = path.indexOf('/')
+        while (index > 0) {
+            parents.add(path.substring(0, index))
+            index = path.indexOf('/', index + 1)
+        }
+        return parents
+    }
+
+    static void mkdirs(ChannelSftp channel, String path) {
+        try {
+            if (channel.stat(path).dir) {
+                return
+            }
+        } catch (SftpException exception) {
+            if (exception.id != ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                throw exception
+            }
+        }
+        channel.mkdir(path)
+    }
+
+    static void removeQuietly(ChannelSftp channel, String path) {
+        try {
+            channel.rm(path)
+        } catch (SftpException exception) {
+            if (exception.id != ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                throw exception
+            }
+        }
+    }
+}
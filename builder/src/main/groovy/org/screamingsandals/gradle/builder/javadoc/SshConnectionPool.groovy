@@ -0,0 +1,140 @@
+package org.screamingsandals.gradle.builder.javadoc
+
+import com.jcraft.jsch.Channel
+import com.jcraft.jsch.ChannelExec
+import com.jcraft.jsch.ChannelSftp
+import com.jcraft.jsch.JSch
+import com.jcraft.jsch.Session
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Semaphore
+
+class SshConnectionPool implements Closeable {
+    private final String host
+    private final int port
+    private final String user
+    private final String secret
+    // OpenSSH allows 10 sessions per connection by default
+    private final Semaphore permits
+    private final Deque<ChannelSftp> idle = new ArrayDeque<>()
+    // what was found out about the host, forgotten when the connection is made again
+    private final Map<String, Object> facts = new ConcurrentHashMap<>()
+    private Session session
+
+    SshConnectionPool(String host, String user, String secret, int port = 22, int maxChannels = 8) {
+        this.host = host
+        this.port = port
+        this.user = user
+        this.secret = secret
+        this.permits = new Semaphore(Math.max(1, maxChannels), true)
+    }
+
+    synchronized Session getSession() {
+        if (session == null || !session.connected) {
+            def jsch = new JSch()
+            session = jsch.getSession(user, host, port)
+            session.setConfig("StrictHostKeyChecking", "no")
+            session.setPassword(secret)
+            session.connect()
+            facts.clear()
+        }
+        return session
+    }
+
+    // computed without holding the pool, as finding out usually needs a channel. Racing callers may both compute it
+    def <T> T remember(String fact, Closure<T> compute) {
+        def known = facts.get(fact)
+        if (known == null) {
+            known = compute()
+            facts.putIfAbsent(fact, known)
+        }
+        return known as T
+    }
+
+    ChannelSftp borrowSftp() {
+        permits.acquire()
+        return takeSftp()
+    }
+
+    ChannelSftp tryBorrowSftp() {
+        if (!permits.tryAcquire()) {
+            return null
+        }
+        return takeSftp()
+    }
+
+    ChannelExec borrowExec() {
+        permits.acquire()
+        try {
+            return getSession().openChannel("exec") as ChannelExec
+        } catch (Exception exception) {
+            permits.release()
+            throw exception
+        }
+    }
+
+    void release(Channel channel) {
+        try {
+            if (channel instanceof ChannelSftp && channel.connected && !channel.closed) {
+                synchronized (idle) {
+                    idle.push(channel as ChannelSftp)
+                }
+            } else {
+                channel.disconnect()
+            }
+        } finally {
+            permits.release()
+        }
+    }
+
+    def <T> T withSftp(Closure<T> action) {
+        def channel = borrowSftp()
+        def healthy = false
+        try {
+            def result = action(channel)
+            healthy = true
+            return result
+        } finally {
+            if (!healthy) {
+                // the channel may be in the middle of a transfer
+                channel.disconnect()
+            }
+            release(channel)
+        }
+    }
+
+    private ChannelSftp takeSftp() {
+        try {
+            while (true) {
+                ChannelSftp channel
+                synchronized (idle) {
+                    channel = idle.poll()
+                }
+                if (channel == null) {
+                    channel = getSession().openChannel("sftp") as ChannelSftp
+                    channel.connect()
+                    return channel
+                }
+                if (channel.connected && !channel.closed) {
+                    // borrowers navigate relatively, so every borrow starts from the login directory
+                    channel.cd(channel.home)
+                    return channel
+                }
+            }
+        } catch (Exception exception) {
+            permits.release()
+            throw exception
+        }
+    }
+
+    @Override
+    synchronized void close() {
+        synchronized (idle) {
+            idle.each { it.disconnect() }
+            idle.clear()
+        }
+        session?.disconnect()
+        session = null
+        facts.clear()
+    }
+}
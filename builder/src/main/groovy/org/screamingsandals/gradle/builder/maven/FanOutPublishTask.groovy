@@ -0,0 +1,203 @@
+package org.screamingsandals.gradle.builder.maven
+
+import groovy.json.JsonOutput
+import org.gradle.api.DefaultTask
+import org.gradle.api.GradleException
+import org.gradle.api.Project
+import org.gradle.api.artifacts.repositories.MavenArtifactRepository
+import org.gradle.api.file.ConfigurableFileCollection
+import org.gradle.api.file.RegularFileProperty
+import org.gradle.api.provider.MapProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.publish.PublishingExtension
+import org.gradle.api.publish.maven.MavenPublication
+import org.gradle.api.publish.maven.tasks.GenerateMavenPom
+import org.gradle.api.publish.maven.tasks.PublishToMavenRepository
+import org.gradle.api.services.ServiceReference
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.InputFile
+import org.gradle.api.tasks.InputFiles
+import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.Nested
+import org.gradle.api.tasks.Optional
+import org.gradle.api.tasks.OutputFile
+import org.gradle.api.tasks.TaskAction
+import org.screamingsandals.gradle.metrics.BuildMetricsService
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+
+// Publishes every maven publication to every repository at once: each file is read once and uploaded to all repositories in parallel
+abstract class FanOutPublishTask extends DefaultTask {
+    static final String TASK_NAME = "publishToAllRepositories"
+
+    // A repository to publish to, copied from its MavenArtifactRepository
+    interface Target {
+        @Input
+        Property<String> getName()
+
+        @Input
+        Property<String> getUrl()
+
+        // not an input, so tokens don't end up in the task history
+        @Internal
+        MapProperty<String, String> getHeaders()
+    }
+
+    // The coordinates and files of a MavenPublication
+    interface Publication {
+        @Input
+        Property<String> getGroupId()
+
+        @Input
+        Property<String> getArtifactId()
+
+        @Input
+        Property<String> getVersion()
+
+        // classifier.extension -> file, the files themselves are tracked by artifactFiles
+        @Internal
+        MapProperty<String, File> getArtifacts()
+
+        @InputFiles
+        ConfigurableFileCollection getArtifactFiles()
+
+        @InputFile
+        RegularFileProperty getPom()
+    }
+
+    @Nested
+    final List<Target> targets = []
+
+    @Nested
+    final List<Publication> publications = []
+
+    @Input
+    abstract Property<Boolean> getSkipUnchanged()
+
+    @Internal
+    abstract Property<MavenUploadService> getUploads()
+
+    @ServiceReference(BuildMetricsService.NAME)
+    @Optional
+    abstract Property<BuildMetricsService> getMetrics()
+
+    // what was published last, read by the discord task. Missing if nothing was published
+    @OutputFile
+    abstract RegularFileProperty getPublished()
+
+    // Called by the MavenRepository implementations, the per-repository publish tasks are disabled in favour of this one
+    static void addTarget(Project project, MavenArtifactRepository repository, Map<String, String> headers) {
+        if (!UnchangedPublication.isFlagSet(project, 'fanOutPublishing')) {
+            return
+        }
+        if (!project.tasks.names.contains(TASK_NAME)) {
+            register(project)
+        }
+        project.tasks.named(TASK_NAME, FanOutPublishTask).configure { task ->
+            def target = project.objects.newInstance(Target)
+            target.name.set(repository.name)
+            target.url.set(repository.url.toString())
+            target.headers.set(headers.findAll { it.value != null })
+            task.targets.add(target)
+        }
+        project.tasks.withType(PublishToMavenRepository).configureEach {
+            if (it.repository.is(repository)) {
+                it.enabled = false
+            }
+        }
+    }
+
+    static void register(Project project) {
+        def uploads = project.gradle.sharedServices.registerIfAbsent("screamingMavenUploads", MavenUploadService) {
+            it.parameters.parallelism.set(System.getProperty("MavenUploadParallelism", "8") as int)
+            it.parameters.retries.set(System.getProperty("MavenUploadRetries", "3") as int)
+        }
+        PublishingExtension publishing = project.extensions.getByName("publishing")
+        def task = project.tasks.register(TASK_NAME, FanOutPublishTask) { task ->
+            task.group = "publishing"
+            task.description = "Publishes all Maven publications to all configured repositories at once."
+            task.uploads.set(uploads)
+            task.usesService(uploads)
+            task.skipUnchanged.set(UnchangedPublication.isEnabled(project))
+            task.published.set(project.layout.buildDirectory.file("fanOutPublish/published.json"))
+            // the repositories aren't inputs, so the same files still have to be published to them every time
+            task.outputs.upToDateWhen { false }
+            publishing.publications.withType(MavenPublication).each { publication ->
+                def pom = project.tasks.named("generatePomFileFor${publication.name.capitalize()}Publication", GenerateMavenPom)
+                task.dependsOn(publication.artifacts, pom)
+                def input = project.objects.newInstance(Publication)
+                input.groupId.set(project.provider { publication.groupId })
+                input.artifactId.set(project.provider { publication.artifactId })
+                input.version.set(project.provider { publication.version })
+                input.artifacts.set(project.provider {
+                    publication.artifacts.collectEntries { [((it.classifier ?: '') + '.' + it.extension): it.file] }
+                })
+                input.artifactFiles.from(input.artifacts.map { it.values() })
+                input.pom.fileProvider(pom.map { it.destination })
+                task.publications.add(input)
+            }
+        }
+        project.tasks.named("publish").configure {
+            it.dependsOn(task)
+        }
+    }
+
+    @TaskAction
+    void publish() {
+        def service = uploads.get()
+        def time = new Date()
+        def resultFile = published.get().asFile
+        resultFile.delete()
+
+        publications.each { publication ->
+            def groupId = publication.groupId.get()
+            def artifactId = publication.artifactId.get()
+            def version = publication.version.get()
+            def artifacts = publication.artifacts.get()
+            def pomFile = publication.pom.get().asFile
+
+            // read once, the same bytes go to every repository
+            def files = new LinkedHashMap<String, byte[]>()
+            artifacts.each { key, file ->
+                files[key] = file.bytes
+            }
+            files['.pom'] = pomFile.bytes
+
+            def deployments = []
+            String publishedUrl = null
+            targets.each { target ->
+                def url = target.url.get()
+                def headers = target.headers.get()
+                if (skipUnchanged.get() && UnchangedPublication.isPublished(url, headers, groupId, artifactId, version, artifacts + ['.pom': pomFile], logger)) {
+                    logger.lifecycle("Skipping {}, {}:{}:{} is already published with the same content", target.name.get(), groupId, artifactId, version)
+                    return
+                }
+                deployments.add(service.deploy(url, headers, groupId, artifactId, version, files, time))
+                publishedUrl = publishedUrl ?: url
+            }
+
+            try {
+                CompletableFuture.allOf(deployments as CompletableFuture[]).join()
+            } catch (CompletionException exception) {
+                throw new GradleException("Publishing ${groupId}:${artifactId}:${version} failed", exception.cause)
+            }
+            if (!deployments.isEmpty()) {
+                if (metrics.present) {
+                    metrics.get().uploaded(files.values().sum { it.length } * deployments.size())
+                }
+                resultFile.parentFile.mkdirs()
+                resultFile.text = JsonOutput.toJson([
+                        groupId     : groupId,
+                        artifactId  : artifactId,
+                        version     : version,
+                        repository  : publishedUrl,
+                        snapshotTime: MavenUploadService.format("yyyyMMdd.HHmmss", time),
+                        // classifier.extension -> local file name
+                        artifacts   : artifacts.collectEntries { key, file -> [(key): file.name] }
+                ])
+                logger.lifecycle("Published {}:{}:{} to {} repositories", groupId, artifactId, version, deployments.size())
+            }
+        }
+    }
+}
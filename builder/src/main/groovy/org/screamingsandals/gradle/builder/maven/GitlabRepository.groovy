@@ -10,7 +10,7 @@ class GitlabRepository implements MavenRepository {
     @Override
     void setup(Project project, PublishingExtension publishing) {
         publishing.repositories {
-            it.maven { MavenArtifactRepository repository ->
+            def gitlab = it.maven { MavenArtifactRepository repository ->
                 repository.url System.getenv("GITLAB_REPO")
                 repository.name "GitLab"
                 repository.credentials(HttpHeaderCredentials) {
@@ -21,6 +21,9 @@ class GitlabRepository implements MavenRepository {
                     header(HttpHeaderAuthentication)
                 }
             }
+            def headers = ['Private-Token': System.getenv("GITLAB_TOKEN")]
+            UnchangedPublication.skipUnchanged(project, gitlab, headers)
+            FanOutPublishTask.addTarget(project, gitlab, headers)
         }
     }
 }
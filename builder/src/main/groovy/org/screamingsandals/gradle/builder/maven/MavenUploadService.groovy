@@ -0,0 +1,221 @@
+package org.screamingsandals.gradle.builder.maven
+
+import groovy.xml.XmlSlurper
+import groovy.xml.XmlUtil
+import org.gradle.api.GradleException
+import org.gradle.api.provider.Property
+import org.gradle.api.services.BuildService
+import org.gradle.api.services.BuildServiceParameters
+
+import java.net.http.HttpClient
+import java.net.http.HttpRequest
+import java.net.http.HttpResponse
+import java.nio.charset.StandardCharsets
+import java.security.MessageDigest
+import java.text.SimpleDateFormat
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+// Deploys publications over one pooled HTTP client with a bounded number of concurrent uploads, shared by all projects
+abstract class MavenUploadService implements BuildService<Parameters>, AutoCloseable {
+    interface Parameters extends BuildServiceParameters {
+        Property<Integer> getParallelism()
+        Property<Integer> getRetries()
+    }
+
+    static final List<String> CHECKSUMS = ["md5", "sha1", "sha256", "sha512"]
+
+    private HttpClient client
+    private ExecutorService executor
+
+    synchronized HttpClient getClient() {
+        if (client == null) {
+            client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(Duration.ofSeconds(30))
+                    .followRedirects(HttpClient.Redirect.NORMAL)
+                    .build()
+        }
+        return client
+    }
+
+    synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(parameters.parallelism.getOrElse(8)) { runnable ->
+                def thread = new Thread(runnable, "screaming-maven-upload")
+                thread.daemon = true
+                return thread
+            }
+        }
+        return executor
+    }
+
+    // files are classifier.extension -> content, the same bytes are deployed to every repository
+    CompletableFuture<Void> deploy(String repositoryUrl, Map<String, String> headers, String groupId, String artifactId, String version, Map<String, byte[]> files, Date time) {
+        def artifactBase = repositoryUrl.replaceFirst('/$', '') + '/' + groupId.replace('.', '/') + '/' + artifactId + '/'
+        def versionBase = artifactBase + version + '/'
+        def snapshot = version.endsWith('-SNAPSHOT')
+        def timestamp = format("yyyyMMdd.HHmmss", time)
+        def updated = format("yyyyMMddHHmmss", time)
+
+        def deployed = snapshot ? get(versionBase + 'maven-metadata.xml', headers) : CompletableFuture.completedFuture(null)
+        return deployed.thenCompose { existing ->
+            def buildNumber = 1
+            if (existing != null) {
+                def previous = new XmlSlurper().parseText(existing).versioning.snapshot.buildNumber.text()
+                buildNumber = previous ? (previous as int) + 1 : 1
+            }
+            def value = snapshot ? version.replaceFirst('-SNAPSHOT$', '') + '-' + timestamp + '-' + buildNumber : version
+
+            def uploads = files.collect { key, content ->
+                def classifier = key.substring(0, key.indexOf('.'))
+                def extension = key.substring(key.indexOf('.') + 1)
+                putWithChecksums(versionBase + artifactId + '-' + value + (classifier ? '-' + classifier : '') + '.' + extension, headers, content)
+            }
+            def artifacts = CompletableFuture.allOf(uploads as CompletableFuture[])
+            if (snapshot) {
+                // the metadata goes last, so nobody resolves a snapshot whose files aren't uploaded yet
+                artifacts = artifacts.thenCompose {
+                    putWithChecksums(versionBase + 'maven-metadata.xml', headers, versionMetadata(groupId, artifactId, version, timestamp, buildNumber, value, updated, files.keySet()))
+                }
+            }
+            return artifacts
+        }.thenCompose {
+            get(artifactBase + 'maven-metadata.xml', headers)
+        }.thenCompose { existing ->
+            putWithChecksums(artifactBase + 'maven-metadata.xml', headers, artifactMetadata(existing, groupId, artifactId, version, updated))
+        }
+    }
+
+    CompletableFuture<Void> putWithChecksums(String url, Map<String, String> headers, byte[] content) {
+        def uploads = [put(url, headers, content)]
+        CHECKSUMS.each { algorithm ->
+            uploads.add(put(url + '.' + algorithm, headers, checksum(algorithm, content).getBytes(StandardCharsets.US_ASCII)))
+        }
+        return CompletableFuture.allOf(uploads as CompletableFuture[])
+    }
+
+    CompletableFuture<Void> put(String url, Map<String, String> headers, byte[] content) {
+        return CompletableFuture.supplyAsync({
+            def response = send(request(url, headers).PUT(HttpRequest.BodyPublishers.ofByteArray(content)).build())
+            if (!(response.statusCode() in 200..299)) {
+                throw new GradleException("Uploading $url failed with HTTP ${response.statusCode()}: ${response.body()}")
+            }
+            return null
+        }, getExecutor())
+    }
+
+    // null if there's nothing there yet
+    CompletableFuture<String> get(String url, Map<String, String> headers) {
+        return CompletableFuture.supplyAsync({
+            def response = send(request(url, headers).GET().build())
+            return response.statusCode() == 200 ? response.body() : null
+        }, getExecutor())
+    }
+
+    HttpRequest.Builder request(String url, Map<String, String> headers) {
+        def request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMinutes(5))
+        headers.each { name, value ->
+            if (value != null) {
+                request.header(name, value)
+            }
+        }
+        return request
+    }
+
+    // retries connection failures, rate limiting and server errors with an increasing delay
+    HttpResponse<String> send(HttpRequest request) {
+        def retries = parameters.retries.getOrElse(3)
+        for (int attempt = 0; ; attempt++) {
+            try {
+                def response = getClient().send(request, HttpResponse.BodyHandlers.ofString())
+                if ((response.statusCode() != 429 && response.statusCode() < 500) || attempt >= retries) {
+                    return response
+                }
+            } catch (IOException exception) {
+                if (attempt >= retries) {
+                    throw new GradleException("Request to ${request.uri()} failed", exception)
+                }
+            }
+            Thread.sleep(1000L << attempt)
+        }
+    }
+
+    static byte[] versionMetadata(String groupId, String artifactId, String version, String timestamp, int buildNumber, String value, String updated, Collection<String> keys) {
+        def snapshotVersions = keys.collect { key ->
+            def classifier = key.substring(0, key.indexOf('.'))
+            def extension = key.substring(key.indexOf('.') + 1)
+            """\
+      <snapshotVersion>
+${classifier ? "        <classifier>${XmlUtil.escapeXml(classifier)}</classifier>\n" : ''}        <extension>${XmlUtil.escapeXml(extension)}</extension>
+        <value>${value}</value>
+        <updated>${updated}</updated>
+      </snapshotVersion>
+"""
+        }.join('')
+        return """\
+<?xml version="1.0" encoding="UTF-8"?>
+<metadata modelVersion="1.1.0">
+  <groupId>${XmlUtil.escapeXml(groupId)}</groupId>
+  <artifactId>${XmlUtil.escapeXml(artifactId)}</artifactId>
+  <version>${XmlUtil.escapeXml(version)}</version>
+  <versioning>
+    <snapshot>
+      <timestamp>${timestamp}</timestamp>
+      <buildNumber>${buildNumber}</buildNumber>
+    </snapshot>
+    <lastUpdated>${updated}</lastUpdated>
+    <snapshotVersions>
+${snapshotVersions}    </snapshotVersions>
+  </versioning>
+</metadata>
+""".getBytes(StandardCharsets.UTF_8)
+    }
+
+    static byte[] artifactMetadata(String existing, String groupId, String artifactId, String version, String updated) {
+        def versions = new LinkedHashSet<String>()
+        String release = null
+        if (existing != null) {
+            def metadata = new XmlSlurper().parseText(existing)
+            metadata.versioning.versions.version.each { versions.add(it.text()) }
+            release = metadata.versioning.release.text() ?: null
+        }
+        versions.add(version)
+        if (!version.endsWith('-SNAPSHOT')) {
+            release = version
+        }
+        return """\
+<?xml version="1.0" encoding="UTF-8"?>
+<metadata>
+  <groupId>${XmlUtil.escapeXml(groupId)}</groupId>
+  <artifactId>${XmlUtil.escapeXml(artifactId)}</artifactId>
+  <versioning>
+    <latest>${XmlUtil.escapeXml(version)}</latest>
+${release != null ? "    <release>${XmlUtil.escapeXml(release)}</release>\n" : ''}    <versions>
+${versions.collect { "      <version>${XmlUtil.escapeXml(it)}</version>\n" }.join('')}    </versions>
+    <lastUpdated>${updated}</lastUpdated>
+  </versioning>
+</metadata>
+""".getBytes(StandardCharsets.UTF_8)
+    }
+
+    static String checksum(String algorithm, byte[] content) {
+        def name = algorithm == "sha1" ? "SHA-1" : algorithm == "md5" ? "MD5" : "SHA-" + algorithm.substring(3)
+        return MessageDigest.getInstance(name).digest(content).encodeHex().toString()
+    }
+
+    static String format(String pattern, Date time) {
+        def formatter = new SimpleDateFormat(pattern)
+        formatter.setTimeZone(TimeZone.getTimeZone("UTC"))
+        return formatter.format(time)
+    }
+
+    @Override
+    synchronized void close() {
+        executor?.shutdownNow()
+        executor = null
+    }
+}
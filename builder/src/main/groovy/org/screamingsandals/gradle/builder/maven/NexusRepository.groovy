@@ -3,13 +3,14 @@ package org.screamingsandals.gradle.builder.maven
 import org.gradle.api.Project
 import org.gradle.api.artifacts.repositories.MavenArtifactRepository
 import org.gradle.api.publish.PublishingExtension
+import org.screamingsandals.gradle.metrics.BuildMetricsService
 
 class NexusRepository implements MavenRepository {
     @Override
     void setup(Project project, PublishingExtension publishing) {
-        project.afterEvaluate {
+        project.afterEvaluate(BuildMetricsService.timed(project, "nexus repository ${project.path}") {
             publishing.repositories {
-                it.maven({ MavenArtifactRepository repository ->
+                def nexus = it.maven({ MavenArtifactRepository repository ->
                     if (((String) project.version).contains("SNAPSHOT")) {
                         repository.url = System.getenv("NEXUS_URL_SNAPSHOT")
                     } else {
@@ -18,7 +19,14 @@ class NexusRepository implements MavenRepository {
                     repository.credentials.username = System.getenv("NEXUS_USERNAME")
                     repository.credentials.password = System.getenv("NEXUS_PASSWORD")
                 })
+                def authorization = null
+                if (System.getenv("NEXUS_USERNAME") != null) {
+                    authorization = "Basic " + "${System.getenv("NEXUS_USERNAME")}:${System.getenv("NEXUS_PASSWORD") ?: ''}".getBytes("UTF-8").encodeBase64().toString()
+                }
+                def headers = ['Authorization': authorization]
+                UnchangedPublication.skipUnchanged(project, nexus, headers)
+                FanOutPublishTask.addTarget(project, nexus, headers)
             }
-        }
+        })
     }
 }
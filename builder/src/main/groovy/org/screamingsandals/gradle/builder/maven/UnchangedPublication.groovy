@@ -0,0 +1,135 @@
+package org.screamingsandals.gradle.builder.maven
+
+import groovy.xml.XmlSlurper
+import org.gradle.api.Project
+import org.gradle.api.artifacts.repositories.MavenArtifactRepository
+import org.gradle.api.logging.Logger
+import org.gradle.api.publish.maven.MavenPublication
+import org.gradle.api.publish.maven.tasks.GenerateMavenPom
+import org.gradle.api.publish.maven.tasks.PublishToMavenRepository
+
+import java.net.http.HttpClient
+import java.net.http.HttpRequest
+import java.net.http.HttpResponse
+import java.security.MessageDigest
+import java.time.Duration
+
+// Skips publishing to a repository when every file of the publication (including the pom) is already there with the same sha1.
+// All files of a snapshot share one timestamp, so a publication is either uploaded whole or skipped whole.
+class UnchangedPublication {
+    static final int BUFFER_SIZE = 64 * 1024
+
+    // A bare -Pflag switches a flag on as well as -Pflag=true does, only the value false switches it off again
+    static boolean isFlagSet(Project project, String flag) {
+        return project.hasProperty(flag) && project.property(flag).toString() != 'false'
+    }
+
+    static boolean isEnabled(Project project) {
+        return !isFlagSet(project, 'disableSkipUnchangedPublications')
+    }
+
+    static void skipUnchanged(Project project, MavenArtifactRepository repository, Map<String, String> headers) {
+        if (!isEnabled(project)) {
+            return
+        }
+        project.tasks.withType(PublishToMavenRepository).configureEach { task ->
+            if (!task.repository.is(repository)) {
+                return
+            }
+            def repositoryUrl = repository.url.toString()
+            def pomFile = project.tasks.named("generatePomFileFor${task.publication.name.capitalize()}Publication", GenerateMavenPom).map { it.destination }
+            task.onlyIf("the publication differs from the published one") { PublishToMavenRepository publishTask ->
+                if (isPublished(repositoryUrl, headers, publishTask.publication, pomFile.get(), publishTask.logger)) {
+                    publishTask.logger.lifecycle("Skipping {}, {}:{}:{} is already published with the same content", publishTask.name, publishTask.publication.groupId, publishTask.publication.artifactId, publishTask.publication.version)
+                    return false
+                }
+                return true
+            }
+        }
+    }
+
+    static boolean isPublished(String repositoryUrl, Map<String, String> headers, MavenPublication publication, File pomFile, Logger logger) {
+        // classifier.extension -> local file
+        def files = new LinkedHashMap<String, File>()
+        publication.artifacts.each {
+            files[(it.classifier ?: '') + '.' + it.extension] = it.file
+        }
+        files['.pom'] = pomFile
+        return isPublished(repositoryUrl, headers, publication.groupId, publication.artifactId, publication.version, files, logger)
+    }
+
+    // files are classifier.extension -> local file, including the pom
+    static boolean isPublished(String repositoryUrl, Map<String, String> headers, String groupId, String artifactId, String version, Map<String, File> files, Logger logger) {
+        if (!repositoryUrl.startsWith("http")) {
+            return false
+        }
+        def base = repositoryUrl.replaceFirst('/$', '') + '/' + groupId.replace('.', '/') + '/' + artifactId + '/' + version + '/'
+        def client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(30))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build()
+
+        // classifier.extension -> remote file name
+        def remoteNames = new HashMap<String, String>()
+        if (version.endsWith('-SNAPSHOT')) {
+            def metadata = fetch(client, base + 'maven-metadata.xml', headers)
+            if (metadata == null) {
+                return false
+            }
+            new XmlSlurper().parseText(metadata).versioning.snapshotVersions.snapshotVersion.each { snapshotVersion ->
+                def classifier = snapshotVersion.classifier.text()
+                def extension = snapshotVersion.extension.text()
+                remoteNames[classifier + '.' + extension] = "${artifactId}-${snapshotVersion.value.text()}${classifier ? '-' + classifier : ''}.${extension}".toString()
+            }
+        } else {
+            files.keySet().each { key ->
+                def classifier = key.substring(0, key.indexOf('.'))
+                def extension = key.substring(key.indexOf('.') + 1)
+                remoteNames[key] = "${artifactId}-${version}${classifier ? '-' + classifier : ''}.${extension}".toString()
+            }
+        }
+
+        for (def entry : files.entrySet()) {
+            def remoteName = remoteNames[entry.key]
+            if (remoteName == null) {
+                logger.info("{} isn't published yet", entry.value.name)
+                return false
+            }
+            def remoteSha1 = fetch(client, base + remoteName + '.sha1', headers)?.trim()?.split(/\s+/)?.first()
+            if (remoteSha1 != sha1(entry.value)) {
+                logger.info("{} differs from {}", entry.value.name, remoteName)
+                return false
+            }
+        }
+        return true
+    }
+
+    // null if the file can't be fetched, the upload then decides
+    static String fetch(HttpClient client, String url, Map<String, String> headers) {
+        def request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(30))
+        headers.each { name, value ->
+            if (value != null) {
+                request.header(name, value)
+            }
+        }
+        try {
+            def response = client.send(request.GET().build(), HttpResponse.BodyHandlers.ofString())
+            return response.statusCode() == 200 ? response.body() : null
+        } catch (IOException ignored) {
+            return null
+        }
+    }
+
+    static String sha1(File file) {
+        def digest = MessageDigest.getInstance("SHA-1")
+        def buffer = new byte[BUFFER_SIZE]
+        file.withInputStream { input ->
+            int read
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read)
+            }
+        }
+        return digest.digest().encodeHex().toString()
+    }
+}
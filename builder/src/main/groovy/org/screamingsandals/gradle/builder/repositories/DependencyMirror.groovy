@@ -0,0 +1,38 @@
+package org.screamingsandals.gradle.builder.repositories
+
+import org.gradle.api.Project
+import org.gradle.api.artifacts.repositories.MavenArtifactRepository
+import org.screamingsandals.gradle.slib.Constants
+
+class DependencyMirror {
+    static final ENVIRONMENT_VARIABLE = Constants.MIRROR_ENVIRONMENT_VARIABLE
+    static final REPOSITORY_NAME = Constants.MIRROR_REPO_NAME
+
+    static URI location(Project project) {
+        def location = System.getenv(ENVIRONMENT_VARIABLE)
+        if (location == null || location.isEmpty()) {
+            return null
+        }
+        return location.contains("://") ? new URI(location) : project.file(location).toURI()
+    }
+
+    static File defaultRoot(File gradleUserHome) {
+        return new File(gradleUserHome, "caches/screaming-plugin-builder/maven-mirror")
+    }
+
+    // Returns the mirror repository if the mirror is configured, declaring it on first use, or null if it isn't.
+    static MavenArtifactRepository repository(Project project) {
+        def location = location(project)
+        if (location == null) {
+            return null
+        }
+        def existing = project.repositories.findByName(REPOSITORY_NAME)
+        if (existing != null) {
+            return existing as MavenArtifactRepository
+        }
+        return project.repositories.maven {
+            it.name = REPOSITORY_NAME
+            it.url = location
+        }
+    }
+}
@@ -1,8 +1,7 @@
 package org.screamingsandals.gradle.builder.repositories
 
 import org.gradle.api.Project
-
-import static java.lang.reflect.Modifier.isStatic
+import org.gradle.api.artifacts.repositories.MavenArtifactRepository
 
 class Repositories {
     static final SCREAMING = "https://repo.screamingsandals.org/public/"
@@ -30,33 +29,28 @@ class Repositories {
     static final ESSENTIALS_X = ENDER_ZONE
 
     def static registerRepositoriesMethods(Project project) {
-        Repositories.class.declaredFields.findAll {
-            isStatic(it.modifiers)
-        }.each {field ->
-            project.repositories.ext[toCamelCase(field.name)] = {
-                project.repositories.maven {
-                    if (field.name == "SCREAMING") {
-                        it.name = "sandals-repo"
-                    }
-                    if (field.name == "PAPERMC" || field.name == "PAPER") {
-                        it.name = "paper-repo"
-                    }
-                    it.url Repositories[field.name]
-                }
+        project.extensions.create("screamingRepos", ScreamingRepositoriesExtension, project)
+        ScreamingRepositoriesExtension.METHODS.each { name, url ->
+            project.repositories.ext[name] = {
+                repository(project, url)
             }
         }
     }
 
-    static String toCamelCase(String s){
-        def parts = s.split("_")
-        def camelCaseString = ""
-        parts.each {
-            if (camelCaseString.isEmpty()) {
-                camelCaseString += it.toLowerCase()
-            } else {
-                camelCaseString += it.substring(0, 1).toUpperCase() + it.substring(1).toLowerCase()
+    static MavenArtifactRepository repository(Project project, String url) {
+        // the mirror replaces all remote repositories
+        def mirror = DependencyMirror.repository(project)
+        if (mirror != null) {
+            return mirror
+        }
+        return project.repositories.maven {
+            if (url == SCREAMING) {
+                it.name = "sandals-repo"
+            }
+            if (url == PAPERMC) {
+                it.name = "paper-repo"
             }
+            it.url url
         }
-        return camelCaseString
     }
 }
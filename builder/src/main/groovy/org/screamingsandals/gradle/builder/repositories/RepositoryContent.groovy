@@ -0,0 +1,70 @@
+package org.screamingsandals.gradle.builder.repositories
+
+import org.gradle.api.Project
+import org.gradle.api.artifacts.repositories.MavenArtifactRepository
+import org.screamingsandals.gradle.slib.Constants
+
+class RepositoryContent {
+    // groups published only to the repository, other repositories are never asked for them. Shared with the slib plugin
+    static final Map<String, List<String>> OWNED_GROUPS = [
+            (Repositories.SCREAMING): Constants.SANDALS_REPO_GROUPS,
+            (Repositories.PAPERMC)  : Constants.PAPER_REPO_GROUPS,
+    ]
+    // repositories which don't host anything else, the groups can still be published to other repositories too
+    static final Map<String, List<String>> ONLY_GROUPS = [
+            (Repositories.SPIGOTMC)           : ['org\\.spigotmc(\\..*)?', 'org\\.bukkit(\\..*)?', 'net\\.md-5(\\..*)?'],
+            (Repositories.PURPURMC)           : ['org\\.purpurmc(\\..*)?', 'net\\.pl3x(\\..*)?'],
+            (Repositories.ENGINEHUB)          : ['com\\.sk89q(\\..*)?', 'org\\.enginehub(\\..*)?'],
+            (Repositories.PLACEHOLDER_API)    : ['me\\.clip(\\..*)?'],
+            (Repositories.MINECRAFT_LIBRARIES): ['com\\.mojang(\\..*)?'],
+    ]
+
+    def static applyContentFilters(Project project) {
+        if (project.hasProperty('disableRepositoryContentFilters') && project.property('disableRepositoryContentFilters')) {
+            return
+        }
+
+        def repositories = project.repositories.withType(MavenArtifactRepository)
+        repositories.configureEach { repository ->
+            if (!isRemote(repository)) {
+                return
+            }
+            def only = groupsOf(ONLY_GROUPS, repository)
+            if (!only.isEmpty()) {
+                repository.content { only.each { group -> it.includeGroupByRegex group } }
+            }
+
+            // works both ways, the repositories can be declared in any order
+            repositories.each { other ->
+                if (other.is(repository) || !isRemote(other)) {
+                    return
+                }
+                excludeOwnedGroups(repository, other)
+                excludeOwnedGroups(other, repository)
+            }
+        }
+    }
+
+    // mavenLocal and other local repositories can contain anything, a repository whose url isn't set yet
+    // is filtered once another repository is added after the url is set
+    private static boolean isRemote(MavenArtifactRepository repository) {
+        return repository.url != null && repository.url.scheme != "file"
+    }
+
+    private static void excludeOwnedGroups(MavenArtifactRepository from, MavenArtifactRepository owner) {
+        def owned = groupsOf(OWNED_GROUPS, owner)
+        def ownedByFrom = groupsOf(OWNED_GROUPS, from)
+        owned.findAll { !ownedByFrom.contains(it) }.each { group ->
+            from.content { it.excludeGroupByRegex group }
+        }
+    }
+
+    private static List<String> groupsOf(Map<String, List<String>> groups, MavenArtifactRepository repository) {
+        def url = normalize(repository.url.toString())
+        return groups.find { normalize(it.key) == url }?.value ?: []
+    }
+
+    private static String normalize(String url) {
+        return url.endsWith("/") ? url : url + "/"
+    }
+}
@@ -0,0 +1,104 @@
+package org.screamingsandals.gradle.builder.webhook
+
+import groovy.json.JsonSlurper
+import org.gradle.api.GradleException
+import org.gradle.api.provider.Property
+import org.gradle.api.services.BuildService
+import org.gradle.api.services.BuildServiceParameters
+
+import java.net.http.HttpClient
+import java.net.http.HttpRequest
+import java.net.http.HttpResponse
+import java.nio.charset.StandardCharsets
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.regex.Pattern
+
+// Lists the uploaded files of a publication once per (repository, group, artifact, version) and shares the result across projects
+abstract class ArtifactListingService implements BuildService<Parameters>, AutoCloseable {
+    interface Parameters extends BuildServiceParameters {
+        Property<Integer> getTimeoutSeconds()
+    }
+
+    // listing key -> classifier.extension -> download url
+    private final Map<String, CompletableFuture<Map<String, String>>> listings = new ConcurrentHashMap<>()
+    private HttpClient client
+
+    Duration getTimeout() {
+        return Duration.ofSeconds(parameters.timeoutSeconds.getOrElse(30))
+    }
+
+    synchronized HttpClient getClient() {
+        if (client == null) {
+            client = HttpClient.newBuilder()
+                    .connectTimeout(timeout)
+                    .followRedirects(HttpClient.Redirect.NORMAL)
+                    .build()
+        }
+        return client
+    }
+
+    CompletableFuture<Map<String, String>> reposilite(String reposiliteUrl, String repositoryName, String groupId, String artifactId, String version, String snapshotVersion, String downloadBaseUrl) {
+        def key = ["reposilite", reposiliteUrl, repositoryName, groupId, artifactId, version].join('|')
+        return listings.computeIfAbsent(key) {
+            def prefix = Pattern.quote(artifactId + '-' + version.replace('SNAPSHOT', snapshotVersion))
+            // snapshots have the build number after the timestamp
+            def pattern = Pattern.compile('^' + prefix + (version.contains('SNAPSHOT') ? '-\\d+' : '') + '(?:-(.+?))?\\.([^.]+)$')
+            fetch("$reposiliteUrl/api/maven/details/$repositoryName/${groupId.replace('.', '/')}/$artifactId/$version").thenApply { json ->
+                def index = new HashMap<String, String>()
+                (json.files as List).each { Map file ->
+                    if (file.contentType == "application/java-archive") {
+                        def matcher = pattern.matcher(file.name as String)
+                        if (matcher.matches()) {
+                            index[(matcher.group(1) ?: '') + '.' + matcher.group(2)] = downloadBaseUrl + file.name
+                        }
+                    }
+                }
+                return index as Map<String, String>
+            }
+        }
+    }
+
+    CompletableFuture<Map<String, String>> nexus(String nexusUrl, String groupId, String artifactId, String version, String snapshotVersion) {
+        def key = ["nexus", nexusUrl, groupId, artifactId, version].join('|')
+        return listings.computeIfAbsent(key) {
+            // all extensions at once, the newest asset of each classifier and extension wins
+            def query = "${nexusUrl}service/rest/v1/search/assets?sort=&direction=desc&q=${snapshotVersion}&maven.groupId=${groupId}&maven.artifactId=${artifactId}&maven.baseVersion=${version}"
+            nexusPage(query, null, new HashMap<String, String>())
+        }
+    }
+
+    CompletableFuture<Map<String, String>> nexusPage(String query, String continuationToken, Map<String, String> index) {
+        def url = continuationToken != null ? query + "&continuationToken=" + URLEncoder.encode(continuationToken, StandardCharsets.UTF_8) : query
+        return fetch(url).thenCompose { json ->
+            (json.items as List).each { Map item ->
+                def maven = item.maven2 as Map
+                index.putIfAbsent((maven.classifier ?: '') + '.' + maven.extension, item.downloadUrl as String)
+            }
+            if (json.continuationToken) {
+                return nexusPage(query, json.continuationToken as String, index)
+            }
+            return CompletableFuture.completedFuture(index)
+        }
+    }
+
+    CompletableFuture<Object> fetch(String url) {
+        def request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(timeout)
+                .header("Accept", "application/json")
+                .GET()
+                .build()
+        return getClient().sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply { response ->
+            if (response.statusCode() != 200) {
+                throw new GradleException("$url returned HTTP ${response.statusCode()}")
+            }
+            return new JsonSlurper().parseText(response.body())
+        }
+    }
+
+    @Override
+    void close() {
+        listings.clear()
+    }
+}
@@ -0,0 +1,93 @@
+package org.screamingsandals.gradle.builder.webhook
+
+import org.gradle.api.logging.Logger
+import org.gradle.api.logging.Logging
+import org.gradle.api.provider.Property
+import org.gradle.api.services.BuildService
+import org.gradle.api.services.BuildServiceParameters
+
+import java.net.http.HttpClient
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+
+// Delivers discord messages in the background, one webhook at a time, and collects aggregated publications until the end of the build
+abstract class DiscordNotificationService implements BuildService<Parameters>, AutoCloseable {
+    interface Parameters extends BuildServiceParameters {
+        Property<Integer> getTimeoutSeconds()
+    }
+
+    private static final Logger LOGGER = Logging.getLogger(DiscordNotificationService)
+
+    // webhook url -> embed the aggregated fields are added to
+    private final Map<String, DiscordWebhook.EmbedObject> aggregated = new LinkedHashMap<>()
+    // webhook url -> field name -> field value
+    private final Map<String, Map<String, String>> aggregatedFields = new LinkedHashMap<>()
+    // webhook url -> last queued message
+    private final Map<String, CompletableFuture<Void>> queues = new ConcurrentHashMap<>()
+    private final List<CompletableFuture<Void>> pending = new CopyOnWriteArrayList<>()
+    private HttpClient client
+
+    synchronized HttpClient getClient() {
+        if (client == null) {
+            client = HttpClient.newBuilder()
+                    .connectTimeout(Duration.ofSeconds(30))
+                    .build()
+        }
+        return client
+    }
+
+    // The first embed for a webhook supplies the title, description and footer, every publication adds one field
+    synchronized void aggregate(String webhookUrl, DiscordWebhook.EmbedObject embed, String fieldName, String fieldValue) {
+        aggregated.putIfAbsent(webhookUrl, embed)
+        aggregatedFields.computeIfAbsent(webhookUrl) { new TreeMap<String, String>() }.put(fieldName, fieldValue)
+    }
+
+    // Messages to the same webhook are sent one after another, each split to fit discord's limits
+    CompletableFuture<Void> send(DiscordWebhook webhook) {
+        def messages = webhook.split()
+        def httpClient = getClient()
+        def sent = queues.compute(webhook.url) { url, previous ->
+            // a failed message shouldn't stop the following ones
+            CompletableFuture<Void> queue = previous == null ? CompletableFuture.completedFuture(null) : previous.exceptionally { null }
+            messages.each { message ->
+                queue = queue.thenCompose { message.executeAsync(httpClient) }
+            }
+            return queue
+        }
+        // completes normally either way, so waiting for the rest isn't cut short by one failure
+        def logger = LOGGER
+        CompletableFuture<Void> logged = sent.handle { result, exception ->
+            if (exception != null) {
+                logger.warn("Couldn't send the discord notification", exception)
+            }
+            return null
+        }
+        pending.add(logged)
+        return logged
+    }
+
+    @Override
+    void close() {
+        synchronized (this) {
+            for (def entry : aggregated.entrySet()) {
+                for (def field : aggregatedFields[entry.key].entrySet()) {
+                    entry.value.addField(field.key, field.value, false)
+                }
+                def webhook = new DiscordWebhook(entry.key)
+                webhook.addEmbed(entry.value)
+                send(webhook)
+            }
+            aggregated.clear()
+            aggregatedFields.clear()
+        }
+        try {
+            CompletableFuture.allOf(pending as CompletableFuture[]).get(parameters.timeoutSeconds.getOrElse(120), TimeUnit.SECONDS)
+        } catch (TimeoutException ignored) {
+            LOGGER.warn("Gave up waiting for {} discord notifications", pending.count { !it.done })
+        }
+    }
+}
@@ -8,11 +8,26 @@ class DiscordWebhookExtension {
     String content
     String buildInformationUrl
     List<String> allowedClassifiersAndExtensions = []
+    // collects the publications of all projects into one notification sent at the end of the build
+    boolean aggregate = false
 
     static def registerTask(Project project) {
         if (System.getenv("OPTIMIZE_FOR_CI_CD") == "1") {
-            project.tasks.create("discord", DiscordWebhookTask)
-            project.tasks.getByName("screamCompile").dependsOn += "discord"
+            def artifactListings = project.gradle.sharedServices.registerIfAbsent("screamingArtifactListings", ArtifactListingService) {
+                it.parameters.timeoutSeconds.set(System.getProperty("DiscordWebhookLookupTimeout", "30") as int)
+            }
+            def notifications = project.gradle.sharedServices.registerIfAbsent("screamingDiscordNotifications", DiscordNotificationService) {
+                it.parameters.timeoutSeconds.set(System.getProperty("DiscordWebhookTimeout", "120") as int)
+            }
+            project.tasks.register("discord", DiscordWebhookTask) {
+                it.artifactListings.set(artifactListings)
+                it.usesService(artifactListings)
+                it.notifications.set(notifications)
+                it.usesService(notifications)
+            }
+            project.tasks.named("screamCompile").configure {
+                it.dependsOn += "discord"
+            }
         }
     }
 }
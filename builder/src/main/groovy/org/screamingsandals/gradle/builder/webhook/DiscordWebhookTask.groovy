@@ -3,15 +3,26 @@ package org.screamingsandals.gradle.builder.webhook
 import groovy.json.JsonSlurper
 import org.gradle.api.DefaultTask
 import org.gradle.api.artifacts.repositories.MavenArtifactRepository
+import org.gradle.api.file.ConfigurableFileCollection
+import org.gradle.api.provider.Property
 import org.gradle.api.publish.maven.MavenPublication
 import org.gradle.api.publish.maven.tasks.AbstractPublishToMaven
 import org.gradle.api.publish.maven.tasks.PublishToMavenRepository
 import org.gradle.api.tasks.Internal
 import org.gradle.api.tasks.TaskAction
+import org.screamingsandals.gradle.builder.maven.FanOutPublishTask
 
 import java.text.SimpleDateFormat
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
 
-class DiscordWebhookTask extends DefaultTask {
+abstract class DiscordWebhookTask extends DefaultTask {
+
+    @Internal
+    abstract Property<ArtifactListingService> getArtifactListings()
+
+    @Internal
+    abstract Property<DiscordNotificationService> getNotifications()
 
     // gradle can sometimes be pain
     @Internal
@@ -45,21 +56,55 @@ class DiscordWebhookTask extends DefaultTask {
                 this.storage.repository = task.repository
             }
         }
+
+        getProject().tasks.withType(FanOutPublishTask).all { task ->
+            fanOutResults.from(task.published)
+        }
+    }
+
+    // written by the fan-out publish task, which publishes instead of the PublishToMavenRepository tasks
+    @Internal
+    abstract ConfigurableFileCollection getFanOutResults()
+
+    // coordinates, repository url, snapshot time and classifier.extension -> file name of what was published, null if nothing was
+    private Map<String, Object> lastPublication() {
+        def result = fanOutResults.files.find { it.exists() }
+        if (result != null) {
+            return new JsonSlurper().parse(result) as Map<String, Object>
+        }
+        if (this.storage.publication == null) {
+            return null
+        }
+        return [
+                groupId     : this.storage.publication.groupId,
+                artifactId  : this.storage.publication.artifactId,
+                version     : this.storage.publication.version,
+                repository  : this.storage.repository?.url?.toString(),
+                snapshotTime: this.storage.snapshotTime,
+                artifacts   : this.storage.publication.artifacts.collectEntries { [((it.classifier ?: '') + '.' + it.extension): it.file.name] }
+        ]
     }
 
     @TaskAction
     void run() {
         def extension = getProject().getExtensions().getByType(DiscordWebhookExtension)
 
+        def published = lastPublication()
+        if (published == null) {
+            // publishing was skipped because nothing changed
+            logger.lifecycle("Nothing was published, skipping the discord notification")
+            return
+        }
+
         String baseUrl = ""
-        if (this.storage.repository != null) {
-            baseUrl += this.storage.repository.url.toString() + '/'
+        if (published.repository != null) {
+            baseUrl += published.repository + '/'
         }
-        baseUrl += this.storage.publication.groupId.replace('.', '/') + '/'
-        baseUrl += this.storage.publication.artifactId + '/' + this.storage.publication.version + '/'
+        baseUrl += (published.groupId as String).replace('.', '/') + '/'
+        baseUrl += published.artifactId + '/' + published.version + '/'
         var snapshotReplace = 'SNAPSHOT'
-        if (this.storage.publication.version.contains('SNAPSHOT')) {
-            snapshotReplace = this.storage.snapshotTime
+        if ((published.version as String).contains('SNAPSHOT')) {
+            snapshotReplace = published.snapshotTime
         }
 
         var webhook = new DiscordWebhook(extension.url)
@@ -72,82 +117,63 @@ class DiscordWebhookTask extends DefaultTask {
             embed.setUrl(extension.buildInformationUrl)
         }
 
+        var uploadedUrls = lookupUploadedUrls(published, snapshotReplace, baseUrl)
+
         var fieldValue = ""
 
-        this.storage.publication.artifacts.each {
-            if (extension.allowedClassifiersAndExtensions.contains((it.classifier?:'') + '.' + it.extension)) {
-                var realname = it.file.getName()
-                var uploadedUrl = baseUrl + realname.replace('SNAPSHOT', snapshotReplace)
-                if (System.getenv('REPOSILITE_BASE_URL')) {
-                    var jsonSlurper = new JsonSlurper()
-                    var shortRepositoryName = this.storage.repository.url.toString()
-                    if (shortRepositoryName.endsWith('/')) {
-                        shortRepositoryName = shortRepositoryName.substring(0, shortRepositoryName.length() - 1)
-                    }
-                    var split = shortRepositoryName.split("/")
-                    shortRepositoryName = split[split.length - 1]
-                    var result = jsonSlurper.parse("${System.getenv('REPOSILITE_BASE_URL')}/api/maven/details/${shortRepositoryName}/${this.storage.publication.groupId.replace('.', '/')}/${this.storage.publication.artifactId}/${this.storage.publication.version}".toURL())
-                    if (realname.contains('SNAPSHOT')) {
-                        // this is snapshot
-                        var startingString = "${this.storage.publication.artifactId}-${this.storage.publication.version.replace('SNAPSHOT', snapshotReplace)}-"
-                        var arti = it
-                        var r = (result.files as List).find {
-                            var map = it as Map
-                            if (map.get("contentType") == "application/java-archive") {
-                                return (map.get("name") as String).startsWith(startingString) && (map.get("name") as String).substring(startingString.length()).matches("\\d+${arti.classifier ? '\\-' + arti.classifier : ''}\\.${arti.extension}")
-                            }
-                            return false
-                        }
-                        if (r != null) {
-                            uploadedUrl = baseUrl + r.get("name")
-                        }
-                    } else {
-                        // this is not snapshot
-                        var theArtifactName = "${this.storage.publication.artifactId}-${this.storage.publication.version}${it.classifier ? '\\-' + it.classifier : ''}.${it.extension}"
-                        var r = (result.files as List).find {
-                            var map = it as Map
-                            if (map.get("contentType") == "application/java-archive") {
-                                return (map.get("name") as String) == theArtifactName
-                            }
-                            return false
-                        }
-                        if (r != null) {
-                            uploadedUrl = baseUrl + r.get("name")
-                        }
-                    }
-                } else if (System.getenv('NEXUS_BASE_URL')) {
-                    var jsonSlurper = new JsonSlurper()
-                    var result = jsonSlurper.parse("${System.getenv('NEXUS_BASE_URL')}service/rest/v1/search/assets?sort=&direction=desc&q=${snapshotReplace}&maven.groupId=${this.storage.publication.groupId}&maven.artifactId=${this.storage.publication.artifactId}&maven.baseVersion=${this.storage.publication.version}&maven.extension=${it.extension}".toURL())
-                    var arti = it
-                    var r = (result.items as List).find {
-                        var map = (it.maven2 as Map)
-                        if (map.containsKey('classifier')) {
-                            return arti.classifier == map.classifier
-                        } else if (!arti.classifier) {
-                            return true
-                        }
-                        return false
-                    }
-                    if (r != null) {
-                        uploadedUrl = r.downloadUrl
-                    }
-                }
-                fieldValue += "[${realname}](${uploadedUrl})\\n"
+        (published.artifacts as Map<String, String>).each { key, realname ->
+            if (extension.allowedClassifiersAndExtensions.contains(key)) {
+                var uploadedUrl = uploadedUrls.get(key) ?: baseUrl + realname.replace('SNAPSHOT', snapshotReplace)
+                fieldValue += "[${realname}](${uploadedUrl})\n"
             }
         }
 
-        if (!fieldValue.isEmpty()) {
-            embed.addField("Artifacts", fieldValue, false)
-        }
-
         embed.setFooter("Screaming Plugin Builder", null)
         var tz = TimeZone.getTimeZone("UTC")
         var df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss")
         df.setTimeZone(tz)
         embed.setTimestamp(df.format(new Date()))
 
+        if (extension.aggregate) {
+            // one message for the whole build, sent when the build finishes
+            if (!fieldValue.isEmpty()) {
+                notifications.get().aggregate(extension.url, embed, "${published.artifactId} ${published.version}", fieldValue)
+            }
+            return
+        }
+
+        if (!fieldValue.isEmpty()) {
+            embed.addField("Artifacts", fieldValue, false)
+        }
+
         webhook.addEmbed(embed)
 
-        webhook.execute()
+        notifications.get().send(webhook)
+    }
+
+    // classifier.extension -> url of the uploaded file, fetched once per publication and shared across projects
+    private Map<String, String> lookupUploadedUrls(Map<String, Object> publication, String snapshotReplace, String baseUrl) {
+        var service = artifactListings.get()
+        CompletableFuture<Map<String, String>> listing = null
+        if (System.getenv('REPOSILITE_BASE_URL')) {
+            var shortRepositoryName = publication.repository as String
+            if (shortRepositoryName.endsWith('/')) {
+                shortRepositoryName = shortRepositoryName.substring(0, shortRepositoryName.length() - 1)
+            }
+            var split = shortRepositoryName.split("/")
+            shortRepositoryName = split[split.length - 1]
+            listing = service.reposilite(System.getenv('REPOSILITE_BASE_URL'), shortRepositoryName, publication.groupId, publication.artifactId, publication.version, snapshotReplace, baseUrl)
+        } else if (System.getenv('NEXUS_BASE_URL')) {
+            listing = service.nexus(System.getenv('NEXUS_BASE_URL'), publication.groupId, publication.artifactId, publication.version, snapshotReplace)
+        }
+        if (listing == null) {
+            return [:]
+        }
+        try {
+            return listing.get(service.timeout.toMillis(), TimeUnit.MILLISECONDS)
+        } catch (Exception e) {
+            logger.warn("Couldn't list the uploaded artifacts of {}, linking the expected paths instead", publication.artifactId, e)
+            return [:]
+        }
     }
 }
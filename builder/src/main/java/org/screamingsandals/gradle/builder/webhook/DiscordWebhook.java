@@ -2,26 +2,47 @@ package org.screamingsandals.gradle.builder.webhook;
 
 // https://gist.github.com/itIsMaku/5e4edef950e0b83374f79c9675444866
 
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.Accessors;
 
-import javax.net.ssl.HttpsURLConnection;
 import java.awt.*;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.lang.reflect.Array;
-import java.net.URL;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 @RequiredArgsConstructor
 @Data
 @Accessors(chain = true)
 public class DiscordWebhook {
+    // https://discord.com/developers/docs/resources/message#embed-object-embed-limits
+    public static final int MAX_EMBEDS = 10;
+    public static final int MAX_CHARACTERS = 6000;
+    public static final int MAX_FIELDS = 25;
+    public static final int MAX_TITLE = 256;
+    public static final int MAX_DESCRIPTION = 4096;
+    public static final int MAX_FIELD_NAME = 256;
+    public static final int MAX_FIELD_VALUE = 1024;
+    public static final int MAX_FOOTER = 2048;
+    public static final int MAX_AUTHOR = 256;
+    public static final int MAX_RETRIES = 5;
+    // doesn't serialize nulls, so unset properties are left out
+    private static final Gson GSON = new Gson();
 
     private final String url;
     private String content;
@@ -35,85 +56,168 @@ public class DiscordWebhook {
     }
 
     public void execute() throws IOException {
+        try {
+            executeAsync(HttpClient.newHttpClient()).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Posts the message, waiting and retrying as long as Discord responds with 429 Too Many Requests.
+     *
+     * @param client client to send the request with
+     * @return future completed once Discord accepted the message
+     */
+    public CompletableFuture<Void> executeAsync(HttpClient client) {
         if (content == null && embeds.isEmpty()) {
             throw new IllegalArgumentException("Set content or add at least one EmbedObject");
         }
-        JSONObject json = new JSONObject();
-        json.put("content", content);
-        json.put("username", username);
-        json.put("avatar_url", avatarUrl);
-        json.put("tts", tts);
+        return post(client, toJson(), 0);
+    }
+
+    /**
+     * Splits this message into messages that fit Discord's limits, keeping the order of embeds and fields.
+     * Embeds with too many or too long fields are continued in further embeds with the same title.
+     *
+     * @return messages to send in order
+     */
+    public List<DiscordWebhook> split() {
+        var messages = new ArrayList<DiscordWebhook>();
+        var current = new DiscordWebhook(url).setContent(content).setUsername(username).setAvatarUrl(avatarUrl).setTts(tts);
+        var characters = 0;
+        for (var embed : embeds) {
+            for (var part : embed.split()) {
+                var length = part.length();
+                if (current.embeds.size() == MAX_EMBEDS || (!current.embeds.isEmpty() && characters + length > MAX_CHARACTERS)) {
+                    messages.add(current);
+                    current = new DiscordWebhook(url).setUsername(username).setAvatarUrl(avatarUrl);
+                    characters = 0;
+                }
+                current.addEmbed(part);
+                characters += length;
+            }
+        }
+        messages.add(current);
+        return messages;
+    }
+
+    public String toJson() {
+        var json = new JsonObject();
+        json.addProperty("content", content);
+        json.addProperty("username", username);
+        json.addProperty("avatar_url", avatarUrl);
+        json.addProperty("tts", tts);
         if (!embeds.isEmpty()) {
-            List<JSONObject> embedObjects = new ArrayList<>();
-            for (EmbedObject embed : embeds) {
-                JSONObject jsonEmbed = new JSONObject();
-                jsonEmbed.put("title", embed.getTitle());
-                jsonEmbed.put("description", embed.getDescription());
-                jsonEmbed.put("url", embed.getUrl());
-                jsonEmbed.put("timestamp", embed.getTimestamp());
+            var embedObjects = new JsonArray();
+            for (var embed : embeds) {
+                var jsonEmbed = new JsonObject();
+                jsonEmbed.addProperty("title", embed.getTitle());
+                jsonEmbed.addProperty("description", embed.getDescription());
+                jsonEmbed.addProperty("url", embed.getUrl());
+                jsonEmbed.addProperty("timestamp", embed.getTimestamp());
 
                 if (embed.getColor() != null) {
-                    Color color = embed.getColor();
-                    int rgb = color.getRed();
+                    var color = embed.getColor();
+                    var rgb = color.getRed();
                     rgb = (rgb << 8) + color.getGreen();
                     rgb = (rgb << 8) + color.getBlue();
 
-                    jsonEmbed.put("color", rgb);
+                    jsonEmbed.addProperty("color", rgb);
                 }
-                EmbedObject.Footer footer = embed.getFooter();
-                EmbedObject.Image image = embed.getImage();
-                EmbedObject.Thumbnail thumbnail = embed.getThumbnail();
-                EmbedObject.Author author = embed.getAuthor();
-                List<EmbedObject.Field> fields = embed.getFields();
+                var footer = embed.getFooter();
+                var image = embed.getImage();
+                var thumbnail = embed.getThumbnail();
+                var author = embed.getAuthor();
                 if (footer != null) {
-                    JSONObject jsonFooter = new JSONObject();
-                    jsonFooter.put("text", footer.getText());
-                    jsonFooter.put("icon_url", footer.getIconUrl());
-                    jsonEmbed.put("footer", jsonFooter);
+                    var jsonFooter = new JsonObject();
+                    jsonFooter.addProperty("text", footer.getText());
+                    jsonFooter.addProperty("icon_url", footer.getIconUrl());
+                    jsonEmbed.add("footer", jsonFooter);
                 }
                 if (image != null) {
-                    JSONObject jsonImage = new JSONObject();
-                    jsonImage.put("url", image.getUrl());
-                    jsonEmbed.put("image", jsonImage);
+                    var jsonImage = new JsonObject();
+                    jsonImage.addProperty("url", image.getUrl());
+                    jsonEmbed.add("image", jsonImage);
                 }
                 if (thumbnail != null) {
-                    JSONObject jsonThumbnail = new JSONObject();
-                    jsonThumbnail.put("url", thumbnail.getUrl());
-                    jsonEmbed.put("thumbnail", jsonThumbnail);
+                    var jsonThumbnail = new JsonObject();
+                    jsonThumbnail.addProperty("url", thumbnail.getUrl());
+                    jsonEmbed.add("thumbnail", jsonThumbnail);
                 }
                 if (author != null) {
-                    JSONObject jsonAuthor = new JSONObject();
-                    jsonAuthor.put("name", author.getName());
-                    jsonAuthor.put("url", author.getUrl());
-                    jsonAuthor.put("icon_url", author.getIconUrl());
-                    jsonEmbed.put("author", jsonAuthor);
+                    var jsonAuthor = new JsonObject();
+                    jsonAuthor.addProperty("name", author.getName());
+                    jsonAuthor.addProperty("url", author.getUrl());
+                    jsonAuthor.addProperty("icon_url", author.getIconUrl());
+                    jsonEmbed.add("author", jsonAuthor);
                 }
-                List<JSONObject> jsonFields = new ArrayList<>();
-                for (EmbedObject.Field field : fields) {
-                    JSONObject jsonField = new JSONObject();
-                    jsonField.put("name", field.getName());
-                    jsonField.put("value", field.getValue());
-                    jsonField.put("inline", field.isInline());
+                var jsonFields = new JsonArray();
+                for (var field : embed.getFields()) {
+                    var jsonField = new JsonObject();
+                    jsonField.addProperty("name", field.getName());
+                    jsonField.addProperty("value", field.getValue());
+                    jsonField.addProperty("inline", field.isInline());
                     jsonFields.add(jsonField);
                 }
-                jsonEmbed.put("fields", jsonFields.toArray());
+                jsonEmbed.add("fields", jsonFields);
                 embedObjects.add(jsonEmbed);
             }
-            json.put("embeds", embedObjects.toArray());
-        }
-        URL url = new URL(this.url);
-        HttpsURLConnection connection = (HttpsURLConnection) url.openConnection();
-        connection.addRequestProperty("Content-Type", "application/json");
-        connection.addRequestProperty("User-Agent", "Java-DiscordWebhook-BY-Gelox_");
-        connection.setDoOutput(true);
-        connection.setRequestMethod("POST");
-        OutputStream stream = connection.getOutputStream();
-        var string = json.toString();
-        stream.write(string.getBytes(StandardCharsets.UTF_8));
-        stream.flush();
-        stream.close();
-        connection.getInputStream().close();
-        connection.disconnect();
+            json.add("embeds", embedObjects);
+        }
+        return GSON.toJson(json);
+    }
+
+    private CompletableFuture<Void> post(HttpClient client, String json, int attempt) {
+        var request = HttpRequest.newBuilder(URI.create(this.url))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .header("User-Agent", "Java-DiscordWebhook-BY-Gelox_")
+                .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
+                .build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenCompose(response -> {
+            if (response.statusCode() == 429 && attempt < MAX_RETRIES) {
+                var delayed = CompletableFuture.delayedExecutor(retryAfter(response), TimeUnit.MILLISECONDS);
+                return CompletableFuture.supplyAsync(() -> null, delayed).thenCompose(ignored -> post(client, json, attempt + 1));
+            }
+            if (response.statusCode() / 100 != 2) {
+                return CompletableFuture.failedFuture(new IOException("Discord webhook returned HTTP " + response.statusCode() + ": " + response.body()));
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    private static long retryAfter(HttpResponse<String> response) {
+        // both the header and the body are in seconds, the body is more precise
+        try {
+            var body = JsonParser.parseString(response.body());
+            if (body.isJsonObject() && body.getAsJsonObject().has("retry_after")) {
+                return (long) Math.ceil(body.getAsJsonObject().get("retry_after").getAsDouble() * 1000);
+            }
+        } catch (RuntimeException ignored) {
+        }
+        var header = response.headers().firstValue("Retry-After");
+        if (header.isPresent()) {
+            try {
+                return (long) Math.ceil(Double.parseDouble(header.get()) * 1000);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return 1000;
+    }
+
+    private static String truncate(String string, int length) {
+        if (string == null || string.length() <= length) {
+            return string;
+        }
+        return string.substring(0, length - 3) + "...";
+    }
+
+    private static int length(String string) {
+        return string == null ? 0 : string.length();
     }
 
     @Data
@@ -154,6 +258,74 @@ public class DiscordWebhook {
             return this;
         }
 
+        /**
+         * Number of characters Discord counts towards the limit of a message.
+         */
+        public int length() {
+            var length = DiscordWebhook.length(title) + DiscordWebhook.length(description);
+            if (footer != null) {
+                length += DiscordWebhook.length(footer.getText());
+            }
+            if (author != null) {
+                length += DiscordWebhook.length(author.getName());
+            }
+            for (var field : fields) {
+                length += DiscordWebhook.length(field.getName()) + DiscordWebhook.length(field.getValue());
+            }
+            return length;
+        }
+
+        /**
+         * Splits this embed into embeds within Discord's limits. Long field values are split at line breaks,
+         * the first embed keeps the description, images and author, the last one keeps the footer and timestamp.
+         */
+        public List<EmbedObject> split() {
+            var parts = new ArrayList<EmbedObject>();
+            var current = continuation().setDescription(truncate(description, MAX_DESCRIPTION));
+            current.image = image;
+            current.thumbnail = thumbnail;
+            if (author != null) {
+                current.author = new Author(truncate(author.getName(), MAX_AUTHOR), author.getUrl(), author.getIconUrl());
+            }
+            var footerLength = footer == null ? 0 : Math.min(MAX_FOOTER, DiscordWebhook.length(footer.getText()));
+            for (var field : splitFields()) {
+                var fieldLength = DiscordWebhook.length(field.getName()) + DiscordWebhook.length(field.getValue());
+                if (!current.fields.isEmpty() && (current.fields.size() == MAX_FIELDS || current.length() + fieldLength + footerLength > MAX_CHARACTERS)) {
+                    parts.add(current);
+                    current = continuation();
+                }
+                current.fields.add(field);
+            }
+            if (footer != null) {
+                current.footer = new Footer(truncate(footer.getText(), MAX_FOOTER), footer.getIconUrl());
+            }
+            current.timestamp = timestamp;
+            parts.add(current);
+            return parts;
+        }
+
+        private EmbedObject continuation() {
+            return new EmbedObject().setTitle(truncate(title, MAX_TITLE)).setUrl(url).setColor(color);
+        }
+
+        private List<Field> splitFields() {
+            var result = new ArrayList<Field>();
+            for (var field : fields) {
+                var name = truncate(field.getName(), MAX_FIELD_NAME);
+                var value = field.getValue() == null ? "" : field.getValue();
+                while (value.length() > MAX_FIELD_VALUE) {
+                    var cut = value.lastIndexOf('\n', MAX_FIELD_VALUE - 1);
+                    if (cut <= 0) {
+                        cut = MAX_FIELD_VALUE;
+                    }
+                    result.add(new Field(name, value.substring(0, cut), field.isInline()));
+                    value = value.substring(cut).replaceFirst("^\n", "");
+                }
+                result.add(new Field(name, value, field.isInline()));
+            }
+            return result;
+        }
+
         @AllArgsConstructor
         @Getter
         private static class Image {
@@ -189,52 +361,4 @@ public class DiscordWebhook {
             private final String url;
         }
     }
-
-    private static class JSONObject {
-
-        private final HashMap<String, Object> map = new HashMap<>();
-
-        void put(String key, Object value) {
-            if (value != null) {
-                map.put(key, value);
-            }
-        }
-
-        @Override
-        public String toString() {
-            StringBuilder builder = new StringBuilder();
-            Set<Map.Entry<String, Object>> entrySet = map.entrySet();
-            builder.append("{");
-            int i = 0;
-            for (Map.Entry<String, Object> entry : entrySet) {
-                Object val = entry.getValue();
-                builder.append(quote(entry.getKey())).append(":");
-
-                if (val instanceof String) {
-                    builder.append(quote(String.valueOf(val)));
-                } else if (val instanceof Integer) {
-                    builder.append(Integer.valueOf(String.valueOf(val)));
-                } else if (val instanceof Boolean) {
-                    builder.append(val);
-                } else if (val instanceof JSONObject) {
-                    builder.append(val);
-                } else if (val.getClass().isArray()) {
-                    builder.append("[");
-                    int len = Array.getLength(val);
-                    for (int j = 0; j < len; j++) {
-                        builder.append(Array.get(val, j).toString()).append(j != len - 1 ? "," : "");
-                    }
-                    builder.append("]");
-                }
-
-                builder.append(++i == entrySet.size() ? "}" : ",");
-            }
-            return builder.toString();
-        }
-
-        private String quote(String string) {
-            return "\"" + string + "\"";
-        }
-    }
-
 }
@@ -0,0 +1,86 @@
+package org.screamingsandals.gradle.builder.debug
+
+import com.sun.net.httpserver.HttpServer
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.nio.file.Files
+import java.security.MessageDigest
+
+import static org.junit.jupiter.api.Assertions.*
+
+class DownloaderTest {
+    static final byte[] CONTENT = (0..<100_000).collect { (byte) (it % 251) } as byte[]
+
+    @TempDir
+    File directory
+
+    HttpServer server
+    List<String> ranges = []
+
+    @BeforeEach
+    void start() {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext("/server.jar") { exchange ->
+            def range = exchange.requestHeaders.getFirst("Range")
+            ranges.add(range)
+            def from = range == null ? 0 : (range - "bytes=" - "-") as int
+            exchange.responseHeaders.add("Content-Length", (CONTENT.length - from) as String)
+            exchange.sendResponseHeaders(range == null ? 200 : 206, CONTENT.length - from)
+            exchange.responseBody.withStream { it.write(CONTENT, from, CONTENT.length - from) }
+        }
+        server.start()
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0)
+    }
+
+    String url() {
+        return "http://127.0.0.1:${server.address.port}/server.jar"
+    }
+
+    static String sha256(byte[] bytes) {
+        return MessageDigest.getInstance("SHA-256").digest(bytes).encodeHex().toString()
+    }
+
+    @Test
+    void resumesFromPartFile() {
+        def target = new File(directory, "server.jar")
+        new File(directory, "server.jar.part").bytes = Arrays.copyOf(CONTENT, 40_000)
+
+        def downloader = new Downloader()
+        downloader.download(url(), target, sha256(CONTENT))
+
+        assertEquals(["bytes=40000-"], ranges)
+        assertArrayEquals(CONTENT, target.bytes)
+        assertEquals(CONTENT.length - 40_000, downloader.downloadedBytes.get())
+        assertFalse(new File(directory, "server.jar.part").exists())
+    }
+
+    @Test
+    void downloadsWholeFileWithoutPart() {
+        def target = new File(directory, "server.jar")
+
+        new Downloader().download(url(), target, sha256(CONTENT))
+
+        assertEquals([null], ranges)
+        assertArrayEquals(CONTENT, target.bytes)
+    }
+
+    @Test
+    void checksumMismatchFailsAndDeletesDownload() {
+        def target = new File(directory, "server.jar")
+
+        def exception = assertThrows(IOException) {
+            new Downloader().download(url(), target, sha256("something else".bytes))
+        }
+
+        assertTrue(exception.message.startsWith("Checksum mismatch"))
+        assertFalse(target.exists())
+        assertFalse(Files.exists(new File(directory, "server.jar.part").toPath()))
+    }
+}
@@ -0,0 +1,47 @@
+package org.screamingsandals.gradle.builder.debug
+
+import org.gradle.testkit.runner.GradleRunner
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import static org.junit.jupiter.api.Assertions.*
+
+class TestTaskBuilderTest {
+    static final List<String> VERSIONS = ["1.20.4", "1.19.4"]
+
+    @TempDir
+    File projectDirectory
+    @TempDir
+    File testKitDirectory
+
+    @Test
+    void helpDoesNotRealizeTheTestServerTasks() {
+        new File(projectDirectory, "settings.gradle").text = "rootProject.name = 'test-server'"
+        new File(projectDirectory, "build.gradle").text = """\
+            plugins {
+                id 'org.screamingsandals.plugin-builder'
+            }
+
+            prepareTestTask().versions(${VERSIONS.collect { "'$it'" }.join(', ')}).build()
+
+            // also reports the tasks realized before this line
+            tasks.configureEach { println "realized \$it.name" }
+            println "registered \${tasks.names.findAll { it.contains('PaperServer') || it == 'provisionTestServers' }.sort()}"
+            """.stripIndent()
+
+        def output = GradleRunner.create()
+                .withProjectDir(projectDirectory)
+                .withTestKitDir(testKitDirectory)
+                .withPluginClasspath()
+                .withArguments("help", "-PdisableBuildMetrics")
+                .build()
+                .output
+
+        def registered = VERSIONS.collectMany { ["devPaperServer$it", "runPaperServer$it", "updatePaperServer$it"] } + ["provisionTestServers"]
+        assertTrue(output.contains("registered ${registered.sort()}"), output)
+        def realized = output.readLines().findAll { it.startsWith("realized ") }*.substring("realized ".length())
+        assertTrue(realized.contains("help"), output)
+        def testServerTasks = realized.findAll { it.contains("PaperServer") || it == "provisionTestServers" }
+        assertEquals([], testServerTasks)
+    }
+}
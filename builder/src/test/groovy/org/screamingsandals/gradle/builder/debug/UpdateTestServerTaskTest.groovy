@@ -0,0 +1,87 @@
+package org.screamingsandals.gradle.builder.debug
+
+import org.gradle.testkit.runner.GradleRunner
+import org.gradle.testkit.runner.TaskOutcome
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.security.MessageDigest
+
+import static org.junit.jupiter.api.Assertions.*
+
+class UpdateTestServerTaskTest {
+    static final String VERSION = "1.20.4"
+
+    @TempDir
+    File projectDirectory
+    @TempDir
+    File testKitDirectory
+
+    @BeforeEach
+    void setUp() {
+        new File(projectDirectory, "settings.gradle").text = "rootProject.name = 'test-server'"
+        new File(projectDirectory, "build.gradle").text = """\
+            plugins {
+                id 'org.screamingsandals.plugin-builder'
+            }
+
+            prepareTestTask().versions('$VERSION').build()
+            """.stripIndent()
+    }
+
+    // the metadata and the jar are put into the cache up front, so nothing is downloaded
+    PaperBuild cache(int buildNumber, String content) {
+        def cache = ServerJarCache.forGradleUserHome(testKitDirectory)
+        def build = new PaperBuild(
+                version: VERSION,
+                build: buildNumber,
+                downloadName: "paper-$VERSION-${buildNumber}.jar",
+                sha256: MessageDigest.getInstance("SHA-256").digest(content.bytes).encodeHex().toString()
+        )
+        cache.remember(build)
+        def jar = cache.jarOf(build)
+        jar.parentFile.mkdirs()
+        jar.text = content
+        return build
+    }
+
+    TaskOutcome update() {
+        def result = GradleRunner.create()
+                .withProjectDir(projectDirectory)
+                .withTestKitDir(testKitDirectory)
+                .withPluginClasspath()
+                .withArguments("updatePaperServer$VERSION", "-PdisableBuildMetrics")
+                .build()
+        return result.task(":updatePaperServer$VERSION").outcome
+    }
+
+    File serverJar() {
+        return new File(projectDirectory, "test-environment/paper/$VERSION/server.jar")
+    }
+
+    @Test
+    void upToDateUntilTheBuildChanges() {
+        cache(100, "build 100")
+
+        assertEquals(TaskOutcome.SUCCESS, update())
+        assertEquals("build 100", serverJar().text)
+
+        assertEquals(TaskOutcome.UP_TO_DATE, update())
+
+        cache(101, "build 101")
+        assertEquals(TaskOutcome.SUCCESS, update())
+        assertEquals("build 101", serverJar().text)
+    }
+
+    @Test
+    void rerunsWhenTheServerJarIsMissing() {
+        cache(100, "build 100")
+
+        assertEquals(TaskOutcome.SUCCESS, update())
+        serverJar().delete()
+
+        assertEquals(TaskOutcome.SUCCESS, update())
+        assertEquals("build 100", serverJar().text)
+    }
+}
@@ -0,0 +1,37 @@
+package org.screamingsandals.gradle.builder.dependencies
+
+import org.gradle.testfixtures.ProjectBuilder
+import org.junit.jupiter.api.Test
+
+import java.lang.reflect.Modifier
+
+import static org.junit.jupiter.api.Assertions.*
+
+class ScreamingDependenciesExtensionTest {
+    @Test
+    void tableCoversEveryConstant() {
+        def constants = Dependencies.declaredFields.findAll { Modifier.isStatic(it.modifiers) && it.type == Object }
+        assertEquals(constants.size(), ScreamingDependenciesExtension.METHODS.size())
+        constants.each { field ->
+            assertTrue(ScreamingDependenciesExtension.METHODS.values().any { it.is(Dependencies[field.name]) }, field.name)
+        }
+        assertSame(Dependencies.PAPER, ScreamingDependenciesExtension.METHODS.paper)
+        assertSame(Dependencies.B_STATS_LITE, ScreamingDependenciesExtension.METHODS.bStatsLite)
+    }
+
+    @Test
+    void typedAndDynamicShortcutsAgree() {
+        def project = ProjectBuilder.builder().build()
+        Dependencies.registerDependenciesMethods(project)
+        def extension = project.extensions.getByType(ScreamingDependenciesExtension)
+
+        assertEquals("io.papermc.paper:paper-api:1.20.4-R0.1-SNAPSHOT", extension.paper("1.20.4"))
+        ScreamingDependenciesExtension.METHODS.keySet().each { name ->
+            assertEquals(extension."$name"("1.0"), project.dependencies."$name"("1.0"), name)
+            assertEquals(extension."$name"(), project.dependencies."$name"(), name)
+        }
+        // aliases are listed once
+        assertFalse(Dependencies.registered().containsKey("nukkitX"))
+        assertTrue(Dependencies.registered().containsKey("nukkit"))
+    }
+}
@@ -0,0 +1,169 @@
+package org.screamingsandals.gradle.builder.javadoc
+
+import org.apache.sshd.server.SshServer
+import org.apache.sshd.server.auth.password.PasswordAuthenticator
+import org.apache.sshd.server.command.CommandFactory
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider
+import org.apache.sshd.server.shell.ProcessShellFactory
+import org.apache.sshd.sftp.server.SftpSubsystemFactory
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.nio.file.Files
+import java.time.Duration
+
+import static org.junit.jupiter.api.Assertions.*
+
+class JavadocArchiveUploadTest {
+    @TempDir
+    File remote
+    @TempDir
+    File local
+    @TempDir
+    File keys
+
+    SshServer server
+    SshConnectionPool pool
+    // prepended to every command, lets a test replace tools with failing shell functions
+    String shellPrefix = ""
+    List<String> commands = Collections.synchronizedList([])
+
+    @BeforeEach
+    void start() {
+        server = SshServer.setUpDefaultServer()
+        server.host = "127.0.0.1"
+        server.port = 0
+        server.keyPairProvider = new SimpleGeneratorHostKeyProvider(new File(keys, "host.key").toPath())
+        server.passwordAuthenticator = { user, password, session -> user == "javadoc" && password == "secret" } as PasswordAuthenticator
+        server.subsystemFactories = [new SftpSubsystemFactory()]
+        // the upload runs a shell script, like sshd does on the real host
+        server.commandFactory = { channel, command ->
+            commands.add(command)
+            new ProcessShellFactory(command, "/bin/sh", "-c", shellPrefix + command).createShell(channel)
+        } as CommandFactory
+        server.start()
+
+        pool = new SshConnectionPool("127.0.0.1", "javadoc", "secret", server.port)
+    }
+
+    @AfterEach
+    void stop() {
+        pool.close()
+        server.stop(true)
+    }
+
+    Map<String, Object> upload(Duration timeout = Duration.ofMinutes(1)) {
+        return pool.withSftp { channel ->
+            channel.cd(new File(remote, "docs").absolutePath)
+            return new JavadocArchiveUpload(pool, local, timeout).upload(channel)
+        }
+    }
+
+    void write(File root, String path, String content) {
+        def file = new File(root, path)
+        file.parentFile.mkdirs()
+        file.text = content
+    }
+
+    static Map<String, String> tree(File root) {
+        def files = new TreeMap<String, String>()
+        root.eachFileRecurse { file ->
+            def path = root.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/' as char)
+            if (file.isFile() && path != JavadocSync.MANIFEST_NAME) {
+                files.put(path, file.text)
+            }
+        }
+        return files
+    }
+
+    // everything next to the served directory, the release names contain a timestamp
+    List<String> siblings() {
+        return remote.list().collect { it.replaceFirst(/\.release-\d+$/, '.release') }.sort()
+    }
+
+    @Test
+    void replacesTheTreeThroughASymlink() {
+        def docs = new File(remote, "docs")
+        write(docs, "stale.html", "stale")
+        write(local, "index.html", "index")
+        write(local, "org/example/A.html", "A")
+
+        def result = upload()
+        assertEquals(2, result.files)
+        assertTrue((result.compressedBytes as long) > 0)
+        assertTrue(Files.isSymbolicLink(docs.toPath()))
+        assertFalse(Files.readSymbolicLink(docs.toPath()).absolute)
+        assertEquals(tree(local), tree(docs))
+        assertTrue(new File(docs, JavadocSync.MANIFEST_NAME).exists())
+        assertEquals(["docs", "docs.release"], siblings())
+
+        write(local, "org/example/A.html", "A changed")
+        new File(local, "index.html").delete()
+
+        upload()
+        assertTrue(Files.isSymbolicLink(docs.toPath()))
+        assertEquals(tree(local), tree(docs))
+        // the previous release is gone
+        assertEquals(["docs", "docs.release"], siblings())
+        // the host was checked for mv -T only once
+        assertEquals(1, commands.count { it == JavadocArchiveUpload.SWAP_PROBE })
+    }
+
+    @Test
+    void failedExtractionKeepsTheServedTree() {
+        def docs = new File(remote, "docs")
+        write(docs, "index.html", "live")
+        write(local, "index.html", "new")
+        shellPrefix = 'tar() { cat > /dev/null; return 2; }; '
+
+        assertThrows(IOException) { upload() }
+        assertFalse(Files.isSymbolicLink(docs.toPath()))
+        assertEquals(["index.html": "live"], tree(docs))
+    }
+
+    @Test
+    void failedSwapRestoresTheServedTree() {
+        def docs = new File(remote, "docs")
+        write(docs, "index.html", "live")
+        write(local, "index.html", "new")
+        // only the swap of the served tree fails, the check for mv -T passes
+        shellPrefix = 'mv() { if [ "$1" = -T ] && [ "${3##*/}" = docs ]; then return 1; fi; command mv "$@"; }; '
+
+        assertThrows(IOException) { upload() }
+        assertFalse(Files.isSymbolicLink(docs.toPath()))
+        assertEquals(["index.html": "live"], tree(docs))
+        assertFalse(siblings().any { it.startsWith("docs.old") || it.startsWith("docs.link") })
+    }
+
+    @Test
+    void hostWithoutGnuMvIsRejectedUpFront() {
+        def docs = new File(remote, "docs")
+        write(docs, "index.html", "live")
+        write(local, "index.html", "new")
+        shellPrefix = 'mv() { if [ "$1" = -T ]; then echo "mv: invalid option -- T" >&2; return 1; fi; command mv "$@"; }; '
+
+        assertFalse(new JavadocArchiveUpload(pool, local).supportedByHost)
+        def exception = assertThrows(IOException) { upload() }
+        assertTrue(exception.message.contains("mv -T"), exception.message)
+        assertEquals(["index.html": "live"], tree(docs))
+        assertEquals(["docs"], siblings())
+        assertEquals([JavadocArchiveUpload.SWAP_PROBE], commands)
+    }
+
+    @Test
+    void hangingExtractionTimesOut() {
+        def docs = new File(remote, "docs")
+        write(docs, "index.html", "live")
+        write(local, "index.html", "new")
+        shellPrefix = 'tar() { sleep 30; }; '
+
+        def started = System.nanoTime()
+        def exception = assertThrows(IOException) { upload(Duration.ofSeconds(1)) }
+        assertTrue(exception.message.contains("didn't finish within 1 seconds"), exception.message)
+        assertTrue(Duration.ofNanos(System.nanoTime() - started) < Duration.ofSeconds(20))
+        assertFalse(Files.isSymbolicLink(docs.toPath()))
+        assertEquals(["index.html": "live"], tree(docs))
+    }
+}
@@ -0,0 +1,144 @@
+package org.screamingsandals.gradle.builder.javadoc
+
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory
+import org.apache.sshd.server.SshServer
+import org.apache.sshd.server.auth.password.PasswordAuthenticator
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider
+import org.apache.sshd.server.session.ServerSession
+import org.apache.sshd.sftp.server.Handle
+import org.apache.sshd.sftp.server.SftpEventListener
+import org.apache.sshd.sftp.server.SftpSubsystemFactory
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.nio.file.AccessDeniedException
+
+import static org.junit.jupiter.api.Assertions.*
+
+class JavadocSyncTest {
+    @TempDir
+    File remote
+    @TempDir
+    File local
+    @TempDir
+    File keys
+
+    SshServer server
+    SshConnectionPool pool
+
+    @BeforeEach
+    void start() {
+        server = SshServer.setUpDefaultServer()
+        server.host = "127.0.0.1"
+        server.port = 0
+        server.keyPairProvider = new SimpleGeneratorHostKeyProvider(new File(keys, "host.key").toPath())
+        server.passwordAuthenticator = { user, password, session -> user == "javadoc" && password == "secret" } as PasswordAuthenticator
+        def sftp = new SftpSubsystemFactory()
+        // files named broken.html can't be written, to make uploads fail halfway
+        sftp.addSftpEventListener(new SftpEventListener() {
+            @Override
+            void opening(ServerSession session, String remoteHandle, Handle localHandle) throws IOException {
+                if (localHandle.file.fileName.toString() == "broken.html") {
+                    throw new AccessDeniedException(localHandle.file.toString())
+                }
+            }
+        })
+        server.subsystemFactories = [sftp]
+        server.fileSystemFactory = new VirtualFileSystemFactory(remote.toPath())
+        server.start()
+
+        pool = new SshConnectionPool("127.0.0.1", "javadoc", "secret", server.port)
+        new File(remote, "docs").mkdirs()
+    }
+
+    @AfterEach
+    void stop() {
+        pool.close()
+        server.stop(true)
+    }
+
+    Map<String, Number> sync() {
+        return pool.withSftp { channel ->
+            channel.cd("/docs")
+            return new JavadocSync(pool, local, 4).sync(channel)
+        }
+    }
+
+    void write(File root, String path, String content) {
+        def file = new File(root, path)
+        file.parentFile.mkdirs()
+        file.text = content
+    }
+
+    // path -> content of every file below the directory, except the manifest
+    static Map<String, String> tree(File root) {
+        def files = new TreeMap<String, String>()
+        root.eachFileRecurse { file ->
+            def path = root.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/' as char)
+            if (file.isFile() && path != JavadocSync.MANIFEST_NAME) {
+                files.put(path, file.text)
+            }
+        }
+        return files
+    }
+
+    String remoteManifest() {
+        return new File(remote, "docs/$JavadocSync.MANIFEST_NAME").text
+    }
+
+    String localManifest() {
+        return new String(JavadocSync.manifestContent(JavadocSync.localManifest(local)), "UTF-8")
+    }
+
+    @Test
+    void uploadsChangesAndDeletesStaleFiles() {
+        write(local, "index.html", "index")
+        write(local, "org/example/A.html", "A")
+        write(local, "org/example/B.html", "B")
+        write(new File(remote, "docs"), "stale.html", "stale")
+        write(new File(remote, "docs"), "old/package/X.html", "X")
+
+        assertEquals([uploaded: 3, deleted: 2, unchanged: 0, uploadedBytes: 7L], sync())
+        assertEquals(tree(local), tree(new File(remote, "docs")))
+        assertFalse(new File(remote, "docs/old").exists())
+        assertEquals(localManifest(), remoteManifest())
+
+        assertEquals([uploaded: 0, deleted: 0, unchanged: 3, uploadedBytes: 0L], sync())
+
+        write(local, "org/example/A.html", "A changed")
+        new File(local, "org/example/B.html").delete()
+        write(local, "org/other/C.html", "C")
+
+        assertEquals([uploaded: 2, deleted: 1, unchanged: 1, uploadedBytes: 10L], sync())
+        assertEquals(tree(local), tree(new File(remote, "docs")))
+        assertEquals(localManifest(), remoteManifest())
+    }
+
+    @Test
+    void channelsGoBackToThePool() {
+        (1..20).each { write(local, "page$it/index.html", "page $it") }
+
+        sync()
+
+        // all permits are free again, so a borrow doesn't block
+        def channels = (1..8).collect { pool.tryBorrowSftp() }
+        assertTrue(channels.every { it != null && it.connected })
+        channels.each { pool.release(it) }
+    }
+
+    @Test
+    void failedUploadLeavesNoManifestAndNoBrokenChannels() {
+        (1..20).each { write(local, "page$it/index.html", "page $it") }
+        write(local, "broken.html", "can't be uploaded")
+
+        assertThrows(Exception) { sync() }
+        assertFalse(new File(remote, "docs/$JavadocSync.MANIFEST_NAME").exists())
+
+        def channels = (1..8).collect { pool.tryBorrowSftp() }
+        assertTrue(channels.every { it != null && it.connected })
+        channels.each { it.ls(".") }
+        channels.each { pool.release(it) }
+    }
+}
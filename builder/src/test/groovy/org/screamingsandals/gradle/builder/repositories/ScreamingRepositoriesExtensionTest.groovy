@@ -0,0 +1,32 @@
+package org.screamingsandals.gradle.builder.repositories
+
+import org.gradle.testfixtures.ProjectBuilder
+import org.junit.jupiter.api.Test
+
+import java.lang.reflect.Modifier
+
+import static org.junit.jupiter.api.Assertions.*
+
+class ScreamingRepositoriesExtensionTest {
+    @Test
+    void tableCoversEveryConstant() {
+        def constants = Repositories.declaredFields.findAll { Modifier.isStatic(it.modifiers) && it.type == Object }
+        assertEquals(constants.size(), ScreamingRepositoriesExtension.METHODS.size())
+        assertEquals(Repositories.PAPERMC, ScreamingRepositoriesExtension.METHODS.paper)
+        assertEquals(Repositories.MINECRAFT_LIBRARIES, ScreamingRepositoriesExtension.METHODS.minecraftLibraries)
+    }
+
+    @Test
+    void typedAndDynamicShortcutsAddTheSameRepository() {
+        def project = ProjectBuilder.builder().build()
+        Repositories.registerRepositoriesMethods(project)
+        def extension = project.extensions.getByType(ScreamingRepositoriesExtension)
+
+        def typed = extension.screaming()
+        assertEquals("sandals-repo", typed.name)
+        assertEquals(URI.create(Repositories.SCREAMING), typed.url)
+        assertEquals("paper-repo", project.repositories.paper().name)
+        assertEquals(URI.create(Repositories.JITPACK), project.repositories.vault().url)
+        assertEquals(3, project.repositories.size())
+    }
+}
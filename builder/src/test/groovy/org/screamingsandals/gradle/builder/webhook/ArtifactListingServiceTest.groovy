@@ -0,0 +1,140 @@
+package org.screamingsandals.gradle.builder.webhook
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import groovy.json.JsonOutput
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
+import static org.junit.jupiter.api.Assertions.*
+
+class ArtifactListingServiceTest {
+    HttpServer server
+    ArtifactListingService service
+    // path and query of every request, in order
+    List<String> requests = Collections.synchronizedList([])
+
+    @BeforeEach
+    void start() {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext("/api/maven/details/releases/org/example/art/1.0") { exchange ->
+            respond(exchange, [files: [
+                    [name: "art-1.0.jar", contentType: "application/java-archive"],
+                    [name: "art-1.0-all.jar", contentType: "application/java-archive"],
+                    [name: "art-1.0-sources.jar", contentType: "application/java-archive"],
+                    [name: "art-1.0.pom", contentType: "application/xml"],
+                    [name: "art-1.0.jar.sha1", contentType: "text/plain"]
+            ]])
+        }
+        server.createContext("/api/maven/details/snapshots/org/example/art/1.0-SNAPSHOT") { exchange ->
+            respond(exchange, [files: [
+                    [name: "art-1.0-20240101.120000-3.jar", contentType: "application/java-archive"],
+                    [name: "art-1.0-20240101.120000-3-sources.jar", contentType: "application/java-archive"],
+                    [name: "art-1.0-20240101.120000-3.pom", contentType: "application/xml"],
+                    // an older upload of the same snapshot
+                    [name: "art-1.0-20231231.090000-2.jar", contentType: "application/java-archive"],
+                    [name: "maven-metadata.xml", contentType: "application/xml"]
+            ]])
+        }
+        server.createContext("/nexus/service/rest/v1/search/assets") { exchange ->
+            def query = exchange.requestURI.query
+            if (query.contains("continuationToken=")) {
+                respond(exchange, [items: [
+                        [maven2: [extension: "jar", classifier: "javadoc"], downloadUrl: "http://nexus/art-javadoc.jar"],
+                        [maven2: [extension: "jar"], downloadUrl: "http://nexus/art-older.jar"]
+                ], continuationToken: null])
+            } else {
+                respond(exchange, [items: [
+                        [maven2: [extension: "jar"], downloadUrl: "http://nexus/art.jar"],
+                        [maven2: [extension: "pom"], downloadUrl: "http://nexus/art.pom"]
+                ], continuationToken: "page 2"])
+            }
+        }
+        server.start()
+
+        service = new ArtifactListingService() {
+            @Override
+            ArtifactListingService.Parameters getParameters() {
+                return null
+            }
+
+            @Override
+            Duration getTimeout() {
+                return Duration.ofSeconds(10)
+            }
+        }
+    }
+
+    @AfterEach
+    void stop() {
+        service.close()
+        server.stop(0)
+    }
+
+    void respond(HttpExchange exchange, Map body) {
+        requests.add(exchange.requestURI.toString())
+        def bytes = JsonOutput.toJson(body).getBytes("UTF-8")
+        exchange.responseHeaders.add("Content-Type", "application/json")
+        exchange.sendResponseHeaders(200, bytes.length)
+        exchange.responseBody.withStream { it.write(bytes) }
+    }
+
+    String url() {
+        return "http://127.0.0.1:${server.address.port}"
+    }
+
+    static <T> T await(CompletableFuture<T> future) {
+        return future.get(10, TimeUnit.SECONDS)
+    }
+
+    @Test
+    void listsTheClassifiedFilesOfAReposiliteRelease() {
+        def listing = await(service.reposilite(url(), "releases", "org.example", "art", "1.0", "SNAPSHOT", "https://repo/art/1.0/"))
+
+        assertEquals([
+                ".jar"       : "https://repo/art/1.0/art-1.0.jar",
+                "all.jar"    : "https://repo/art/1.0/art-1.0-all.jar",
+                "sources.jar": "https://repo/art/1.0/art-1.0-sources.jar"
+        ], listing)
+    }
+
+    @Test
+    void listsOnlyTheCurrentBuildOfAReposiliteSnapshot() {
+        def listing = await(service.reposilite(url(), "snapshots", "org.example", "art", "1.0-SNAPSHOT", "20240101.120000", "https://repo/art/1.0-SNAPSHOT/"))
+
+        assertEquals([
+                ".jar"       : "https://repo/art/1.0-SNAPSHOT/art-1.0-20240101.120000-3.jar",
+                "sources.jar": "https://repo/art/1.0-SNAPSHOT/art-1.0-20240101.120000-3-sources.jar"
+        ], listing)
+    }
+
+    @Test
+    void reposiliteListingIsFetchedOncePerPublication() {
+        def first = service.reposilite(url(), "releases", "org.example", "art", "1.0", "SNAPSHOT", "https://repo/art/1.0/")
+        def second = service.reposilite(url(), "releases", "org.example", "art", "1.0", "SNAPSHOT", "https://repo/art/1.0/")
+
+        assertSame(first, second)
+        await(second)
+        assertEquals(1, requests.size())
+    }
+
+    @Test
+    void followsTheNexusContinuationToken() {
+        def listing = await(service.nexus(url() + "/nexus/", "org.example", "art", "1.0-SNAPSHOT", "20240101.120000"))
+
+        // the first page is the newest, a later page doesn't replace what it already listed
+        assertEquals([
+                ".jar"       : "http://nexus/art.jar",
+                ".pom"       : "http://nexus/art.pom",
+                "javadoc.jar": "http://nexus/art-javadoc.jar"
+        ], listing)
+        assertEquals(2, requests.size())
+        assertTrue(requests[0].contains("q=20240101.120000&maven.groupId=org.example&maven.artifactId=art&maven.baseVersion=1.0-SNAPSHOT"), requests[0])
+        assertEquals(requests[0] + "&continuationToken=page+2", requests[1])
+    }
+}
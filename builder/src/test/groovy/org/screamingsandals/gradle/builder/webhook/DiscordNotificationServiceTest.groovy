@@ -0,0 +1,169 @@
+package org.screamingsandals.gradle.builder.webhook
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import groovy.json.JsonSlurper
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+import static org.junit.jupiter.api.Assertions.*
+
+class DiscordNotificationServiceTest {
+    HttpServer server
+    ExecutorService executor
+    DiscordNotificationService service
+    // webhook path -> posted messages, in the order they arrived
+    Map<String, List<Map>> received = [:].asSynchronized()
+    AtomicInteger limited = new AtomicInteger()
+
+    @BeforeEach
+    void start() {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0)
+        // requests are handled in parallel, so only the service can keep them in order
+        executor = Executors.newCachedThreadPool()
+        server.executor = executor
+        server.createContext("/webhooks/") { exchange ->
+            def message = new JsonSlurper().parse(exchange.requestBody) as Map
+            if (exchange.requestURI.path.endsWith("/limited") && limited.getAndIncrement() == 0) {
+                respond(exchange, 429, '{"message": "You are being rate limited.", "retry_after": 0.3, "global": false}')
+                return
+            }
+            if (message.content == "slow") {
+                Thread.sleep(300)
+            }
+            received.computeIfAbsent(exchange.requestURI.path) { [].asSynchronized() }.add(message)
+            if (message.content == "fail") {
+                respond(exchange, 500, '{"message": "Internal Server Error"}')
+                return
+            }
+            exchange.sendResponseHeaders(204, -1)
+            exchange.close()
+        }
+        server.start()
+
+        service = new DiscordNotificationService() {
+            @Override
+            DiscordNotificationService.Parameters getParameters() {
+                return null
+            }
+        }
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0)
+        executor.shutdownNow()
+    }
+
+    static void respond(HttpExchange exchange, int status, String body) {
+        def bytes = body.getBytes("UTF-8")
+        exchange.responseHeaders.add("Content-Type", "application/json")
+        exchange.sendResponseHeaders(status, bytes.length)
+        exchange.responseBody.withStream { it.write(bytes) }
+    }
+
+    String url(String name) {
+        return "http://127.0.0.1:${server.address.port}/webhooks/$name"
+    }
+
+    static void await(List<CompletableFuture<Void>> futures) {
+        CompletableFuture.allOf(futures as CompletableFuture[]).get(30, TimeUnit.SECONDS)
+    }
+
+    DiscordWebhook message(String name, String content) {
+        return new DiscordWebhook(url(name)).setContent(content)
+    }
+
+    // characters discord counts towards the limit of one message
+    static int characters(Map message) {
+        return (message.embeds as List<Map>).sum { Map embed ->
+            def length = (embed.title ?: '').length() + (embed.description ?: '').length() + ((embed.footer as Map)?.text ?: '').length()
+            return length + ((embed.fields as List<Map>).sum { (it.name as String).length() + (it.value as String).length() } ?: 0)
+        } as int
+    }
+
+    @Test
+    void retriesAfterTooManyRequests() {
+        def started = System.nanoTime()
+        await([service.send(message("limited", "hello"))])
+
+        assertEquals(2, limited.get())
+        assertEquals(["hello"], received["/webhooks/limited"]*.content)
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(300))
+    }
+
+    @Test
+    void keepsTheOrderOfEachWebhook() {
+        def sent = []
+        sent << service.send(message("first", "slow"))
+        (1..5).each {
+            sent << service.send(message("first", "first $it"))
+            sent << service.send(message("second", "second $it"))
+        }
+        // a failed message doesn't hold up the ones queued after it
+        sent << service.send(message("second", "fail"))
+        sent << service.send(message("second", "after failure"))
+        await(sent)
+
+        assertEquals(["slow", "first 1", "first 2", "first 3", "first 4", "first 5"], received["/webhooks/first"]*.content)
+        assertEquals(["second 1", "second 2", "second 3", "second 4", "second 5", "fail", "after failure"], received["/webhooks/second"]*.content)
+    }
+
+    @Test
+    void splitsFieldsOverSeveralEmbeds() {
+        def embed = new DiscordWebhook.EmbedObject().setTitle("Published")
+        (1..40).each { embed.addField("artifact $it", "value $it", false) }
+        def webhook = new DiscordWebhook(url("fields"))
+        webhook.addEmbed(embed)
+        await([service.send(webhook)])
+
+        def messages = received["/webhooks/fields"]
+        assertEquals(1, messages.size())
+        def embeds = messages[0].embeds as List<Map>
+        assertEquals([25, 15], embeds.collect { (it.fields as List).size() })
+        assertEquals(["Published", "Published"], embeds*.title)
+        assertEquals((1..40).collect { "value $it" as String }, embeds.collectMany { it.fields as List<Map> }*.value)
+    }
+
+    @Test
+    void splitsLongValuesAndMessages() {
+        // 15 lines of 99 characters, so every value needs two fields and only a few values fit into one message
+        def value = (1..15).collect { line -> (line as String).padRight(99, '.') }.join('\n')
+        def embed = new DiscordWebhook.EmbedObject().setTitle("Changes").setDescription("All the changes").setFooter("footer", null)
+        (1..30).each { embed.addField("module $it", value, false) }
+        def webhook = new DiscordWebhook(url("long"))
+        webhook.addEmbed(embed)
+        await([service.send(webhook)])
+
+        def messages = received["/webhooks/long"]
+        assertTrue(messages.size() > 1)
+        messages.each { message ->
+            assertTrue(characters(message) <= DiscordWebhook.MAX_CHARACTERS, "${characters(message)} characters")
+            (message.embeds as List<Map>).each { part ->
+                assertTrue((part.fields as List).size() <= DiscordWebhook.MAX_FIELDS)
+                (part.fields as List<Map>).each { assertTrue((it.value as String).length() <= DiscordWebhook.MAX_FIELD_VALUE) }
+            }
+        }
+
+        def embeds = messages.collectMany { it.embeds as List<Map> }
+        assertEquals("All the changes", embeds.first().description)
+        assertEquals("footer", (embeds.last().footer as Map).text)
+        // the parts of each value follow each other and join back into the value at the line breaks
+        def values = new LinkedHashMap<String, List<String>>()
+        embeds.collectMany { it.fields as List<Map> }.each { field ->
+            values.computeIfAbsent(field.name as String) { [] }.add(field.value as String)
+        }
+        assertEquals((1..30).collect { "module $it" as String }, values.keySet() as List)
+        values.values().each { parts ->
+            assertEquals(2, parts.size())
+            assertEquals(value, parts.join('\n'))
+        }
+    }
+}
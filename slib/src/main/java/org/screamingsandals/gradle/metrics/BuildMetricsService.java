@@ -0,0 +1,269 @@
+package org.screamingsandals.gradle.metrics;
+
+import groovy.json.JsonOutput;
+import lombok.Data;
+import org.gradle.api.Action;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.publish.maven.tasks.PublishToMavenRepository;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.api.tasks.bundling.AbstractArchiveTask;
+import org.gradle.build.event.BuildEventsListenerRegistry;
+import org.gradle.tooling.events.FinishEvent;
+import org.gradle.tooling.events.OperationCompletionListener;
+import org.gradle.tooling.events.task.TaskFailureResult;
+import org.gradle.tooling.events.task.TaskFinishEvent;
+import org.gradle.tooling.events.task.TaskSkippedResult;
+import org.gradle.tooling.events.task.TaskSuccessResult;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records where the time of a build goes: project configuration, dependency resolution, every task, bytes transferred by the plugins and archive sizes.
+ * The report is written to {@code build/reports/screaming/build-metrics.json} of the root project when the build finishes,
+ * {@code -PbuildMetricsSummary} also prints a summary line.
+ * <p>
+ * With the configuration cache, configuration and resolution are only recorded in the run that stores the cache entry.
+ */
+public abstract class BuildMetricsService implements BuildService<BuildMetricsService.Parameters>, OperationCompletionListener, AutoCloseable {
+    public static final String NAME = "screamingBuildMetrics";
+    private static final Logger LOGGER = Logging.getLogger(BuildMetricsService.class);
+
+    public interface Parameters extends BuildServiceParameters {
+        RegularFileProperty getReport();
+
+        Property<Boolean> getSummary();
+    }
+
+    private final long created = System.currentTimeMillis();
+    // phase -> milliseconds, a phase that happens more than once is summed
+    private final Map<String, Long> phases = new ConcurrentHashMap<>();
+    private final Map<String, TaskMetrics> tasks = new ConcurrentHashMap<>();
+    // task path -> archive, measured when the build finishes so later actions (like minimizing) are included
+    private final Map<String, File> archives = new ConcurrentHashMap<>();
+    private final AtomicLong downloaded = new AtomicLong();
+    private final AtomicLong uploaded = new AtomicLong();
+
+    /**
+     * Registers the service and its listeners for the project, calling it again for the same project does nothing.
+     *
+     * @return the service, or null if disabled with {@code -PdisableBuildMetrics}
+     */
+    public static Provider<BuildMetricsService> register(@NotNull Project project, @NotNull BuildEventsListenerRegistry registry) {
+        if (project.hasProperty("disableBuildMetrics")) {
+            return null;
+        }
+        var service = project.getGradle().getSharedServices().registerIfAbsent(NAME, BuildMetricsService.class, spec -> {
+            spec.getParameters().getReport().set(project.getRootProject().getLayout().getBuildDirectory().file("reports/screaming/build-metrics.json"));
+            spec.getParameters().getSummary().set(project.hasProperty("buildMetricsSummary"));
+        });
+
+        var extraProperties = project.getExtensions().getExtraProperties();
+        if (extraProperties.has(NAME)) {
+            return service;
+        }
+        extraProperties.set(NAME, true);
+        // created right away, so the build duration starts with the configuration of the first project
+        service.get();
+        // several projects register the same listener, task events are keyed by path so duplicates don't matter
+        registry.onTaskCompletion(service);
+
+        var configurationStarted = System.currentTimeMillis();
+        project.afterEvaluate(evaluated -> service.get().phase("configure " + evaluated.getPath(), System.currentTimeMillis() - configurationStarted));
+
+        project.getConfigurations().configureEach(configuration -> {
+            var resolutionStarted = new AtomicLong();
+            configuration.getIncoming().beforeResolve(dependencies -> resolutionStarted.set(System.currentTimeMillis()));
+            configuration.getIncoming().afterResolve(dependencies -> service.get().phase("resolve " + dependencies.getPath(), System.currentTimeMillis() - resolutionStarted.get()));
+        });
+
+        project.getTasks().withType(AbstractArchiveTask.class).configureEach(task -> {
+            task.usesService(service);
+            task.doFirst("recordArchive", new RecordArchive(service));
+        });
+        project.getTasks().withType(PublishToMavenRepository.class).configureEach(task -> {
+            task.usesService(service);
+            task.doLast("recordUploadedBytes", new RecordPublishedBytes(service));
+        });
+        return service;
+    }
+
+    public void phase(@NotNull String name, long millis) {
+        phases.merge(name, millis, Long::sum);
+    }
+
+    /**
+     * Runs the action and records how long it took.
+     */
+    public void time(@NotNull String phase, @NotNull Runnable action) {
+        var start = System.currentTimeMillis();
+        try {
+            action.run();
+        } finally {
+            phase(phase, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Wraps a configuration action, so its duration is recorded as the given phase when build metrics are enabled.
+     */
+    public static <T> Action<T> timed(@NotNull Project project, @NotNull String phase, @NotNull Action<T> action) {
+        return target -> {
+            var registration = project.getGradle().getSharedServices().getRegistrations().findByName(NAME);
+            if (registration == null) {
+                action.execute(target);
+                return;
+            }
+            ((BuildMetricsService) registration.getService().get()).time(phase, () -> action.execute(target));
+        };
+    }
+
+    public void downloaded(long bytes) {
+        downloaded.addAndGet(bytes);
+    }
+
+    public void uploaded(long bytes) {
+        uploaded.addAndGet(bytes);
+    }
+
+    public void archive(@NotNull String taskPath, @NotNull File archive) {
+        archives.put(taskPath, archive);
+    }
+
+    @Override
+    public void onFinish(FinishEvent event) {
+        if (!(event instanceof TaskFinishEvent)) {
+            return;
+        }
+        var result = ((TaskFinishEvent) event).getResult();
+        String outcome;
+        if (result instanceof TaskFailureResult) {
+            outcome = "FAILED";
+        } else if (result instanceof TaskSkippedResult) {
+            outcome = "SKIPPED";
+        } else if (result instanceof TaskSuccessResult && ((TaskSuccessResult) result).isFromCache()) {
+            outcome = "FROM_CACHE";
+        } else if (result instanceof TaskSuccessResult && ((TaskSuccessResult) result).isUpToDate()) {
+            outcome = "UP_TO_DATE";
+        } else {
+            outcome = "SUCCESS";
+        }
+        var path = ((TaskFinishEvent) event).getDescriptor().getTaskPath();
+        tasks.put(path, new TaskMetrics(path, result.getStartTime(), result.getEndTime(), outcome));
+    }
+
+    @Override
+    public void close() {
+        var finished = System.currentTimeMillis();
+        var sortedTasks = new ArrayList<>(tasks.values());
+        sortedTasks.sort(Comparator.comparingLong(TaskMetrics::duration).reversed());
+        var firstTask = sortedTasks.stream().mapToLong(TaskMetrics::getStart).min().orElse(finished);
+        var lastTask = sortedTasks.stream().mapToLong(TaskMetrics::getEnd).max().orElse(finished);
+
+        var taskList = new ArrayList<Map<String, Object>>();
+        for (var task : sortedTasks) {
+            var entry = new LinkedHashMap<String, Object>();
+            entry.put("path", task.getPath());
+            entry.put("durationMillis", task.duration());
+            entry.put("outcome", task.getOutcome());
+            taskList.add(entry);
+        }
+
+        var report = new LinkedHashMap<String, Object>();
+        report.put("started", Instant.ofEpochMilli(created).toString());
+        report.put("durationMillis", finished - created);
+        report.put("configurationMillis", sortedTasks.isEmpty() ? finished - created : Math.max(0, firstTask - created));
+        report.put("executionMillis", lastTask - firstTask);
+        report.put("bytesDownloaded", downloaded.get());
+        report.put("bytesUploaded", uploaded.get());
+        report.put("phases", new TreeMap<>(phases));
+        var archiveSizes = new TreeMap<String, Long>();
+        archives.forEach((path, archive) -> {
+            if (archive.isFile()) {
+                archiveSizes.put(path, archive.length());
+            }
+        });
+        report.put("archives", archiveSizes);
+        report.put("tasks", taskList);
+
+        var file = getParameters().getReport().get().getAsFile();
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.writeString(file.toPath(), JsonOutput.prettyPrint(JsonOutput.toJson(report)), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            // the build itself went fine, a missing report shouldn't fail it
+            LOGGER.warn("Couldn't write the build metrics report to {}", file, e);
+        }
+
+        if (getParameters().getSummary().getOrElse(false)) {
+            var slowest = sortedTasks.isEmpty() ? "" : ", slowest " + sortedTasks.get(0).getPath() + " " + seconds(sortedTasks.get(0).duration());
+            LOGGER.lifecycle("Build metrics: {} tasks in {}{}, {} KiB downloaded, {} KiB uploaded, report at {}",
+                    sortedTasks.size(), seconds(lastTask - firstTask), slowest, downloaded.get() / 1024, uploaded.get() / 1024, file.toURI());
+        }
+    }
+
+    private static String seconds(long millis) {
+        return String.format("%.1fs", millis / 1000.0);
+    }
+
+    @Data
+    private static class TaskMetrics {
+        private final String path;
+        private final long start;
+        private final long end;
+        private final String outcome;
+
+        long duration() {
+            return end - start;
+        }
+    }
+
+    private static class RecordArchive implements Action<Task> {
+        private final Provider<BuildMetricsService> service;
+
+        RecordArchive(Provider<BuildMetricsService> service) {
+            this.service = service;
+        }
+
+        @Override
+        public void execute(@NotNull Task task) {
+            service.get().archive(task.getPath(), ((AbstractArchiveTask) task).getArchiveFile().get().getAsFile());
+        }
+    }
+
+    private static class RecordPublishedBytes implements Action<Task> {
+        private final Provider<BuildMetricsService> service;
+
+        RecordPublishedBytes(Provider<BuildMetricsService> service) {
+            this.service = service;
+        }
+
+        @Override
+        public void execute(@NotNull Task task) {
+            var bytes = 0L;
+            for (var artifact : ((PublishToMavenRepository) task).getPublication().getArtifacts()) {
+                bytes += artifact.getFile().length();
+            }
+            service.get().uploaded(bytes);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.screamingsandals.gradle.slib;
+
+import lombok.Data;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.zip.ZipFile;
+
+/**
+ * Index of classes and packages provided by the artifacts of a classpath.
+ * <p>
+ * Jars are indexed once per daemon and reindexed only when their size or modification time changes.
+ */
+public class ClasspathIndex {
+    private static final Map<File, Artifact> JAR_CACHE = new ConcurrentHashMap<>();
+
+    private final List<Artifact> artifacts;
+
+    private ClasspathIndex(List<Artifact> artifacts) {
+        this.artifacts = artifacts;
+    }
+
+    public static ClasspathIndex of(@NotNull Iterable<File> classpath) {
+        var artifacts = new ArrayList<Artifact>();
+        for (var file : classpath) {
+            if (file.isDirectory()) {
+                // build outputs change all the time, there's nothing to gain by caching them
+                artifacts.add(indexDirectory(file));
+            } else if (file.isFile()) {
+                var cached = JAR_CACHE.get(file);
+                if (cached == null || cached.getSize() != file.length() || cached.getLastModified() != file.lastModified()) {
+                    cached = indexJar(file);
+                    JAR_CACHE.put(file, cached);
+                }
+                artifacts.add(cached);
+            }
+        }
+        return new ClasspathIndex(artifacts);
+    }
+
+    /**
+     * @param classFile class file path, for example org/bukkit/plugin/Plugin.class
+     * @return true if any artifact provides the class
+     */
+    public boolean containsClass(@NotNull String classFile) {
+        return providerOf(classFile) != null;
+    }
+
+    /**
+     * @param packagePath package path, for example org/bukkit/plugin
+     * @return true if any artifact provides at least one class in the package
+     */
+    public boolean containsPackage(@NotNull String packagePath) {
+        return artifacts.stream().anyMatch(artifact -> artifact.getPackages().contains(packagePath));
+    }
+
+    @Nullable
+    public File providerOf(@NotNull String classFile) {
+        return artifacts.stream()
+                .filter(artifact -> artifact.getClasses().contains(classFile))
+                .map(Artifact::getFile)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static Artifact indexJar(File file) {
+        var classes = new HashSet<String>();
+        try (var zip = new ZipFile(file)) {
+            var entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                var name = entries.nextElement().getName();
+                if (name.endsWith(".class")) {
+                    classes.add(name);
+                }
+            }
+        } catch (IOException e) {
+            // not a zip (e.g. a pom or a broken download), it can't provide classes
+        }
+        return new Artifact(file, file.length(), file.lastModified(), classes, packagesOf(classes));
+    }
+
+    private static Artifact indexDirectory(File directory) {
+        var root = directory.toPath();
+        try (var stream = Files.walk(root)) {
+            var classes = stream
+                    .filter(path -> path.toString().endsWith(".class"))
+                    .map(path -> root.relativize(path).toString().replace(File.separatorChar, '/'))
+                    .collect(Collectors.toSet());
+            return new Artifact(directory, 0, 0, classes, packagesOf(classes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Set<String> packagesOf(Set<String> classes) {
+        return classes.stream()
+                .filter(name -> name.lastIndexOf('/') > 0)
+                .map(name -> name.substring(0, name.lastIndexOf('/')))
+                .collect(Collectors.toSet());
+    }
+
+    @Data
+    private static class Artifact {
+        private final File file;
+        private final long size;
+        private final long lastModified;
+        private final Set<String> classes;
+        private final Set<String> packages;
+    }
+}
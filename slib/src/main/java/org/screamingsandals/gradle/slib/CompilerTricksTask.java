@@ -0,0 +1,71 @@
+package org.screamingsandals.gradle.slib;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.tasks.CompileClasspath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Materializes the fake classes used to compile platform code without the platform api on the classpath.
+ */
+public abstract class CompilerTricksTask extends DefaultTask {
+    public static final String NAME = "slibCompilerTricks";
+
+    /**
+     * Key - class file path in the output directory
+     * Value - resource of this plugin containing the fake
+     */
+    @Input
+    public abstract MapProperty<String, String> getFakes();
+
+    /**
+     * Classpath the fakes are added to, fakes of classes it already provides are skipped
+     */
+    @CompileClasspath
+    public abstract ConfigurableFileCollection getClasspath();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    @Inject
+    protected abstract FileSystemOperations getFileSystemOperations();
+
+    public CompilerTricksTask() {
+        getOutputDirectory().convention(getProject().getLayout().getBuildDirectory().dir("slib/compilerTricks"));
+    }
+
+    @TaskAction
+    public void materialize() throws IOException {
+        var output = getOutputDirectory().get().getAsFile();
+        getFileSystemOperations().delete(spec -> spec.delete(output));
+        Files.createDirectories(output.toPath());
+
+        var index = ClasspathIndex.of(getClasspath());
+        for (var entry : getFakes().get().entrySet()) {
+            var provider = index.providerOf(entry.getKey());
+            if (provider != null) {
+                getLogger().info("Not faking {}, it's provided by {}", entry.getKey(), provider);
+                continue;
+            }
+
+            var trick = output.toPath().resolve(entry.getKey());
+            Files.createDirectories(trick.getParent());
+            try (var stream = CompilerTricksTask.class.getResourceAsStream(entry.getValue())) {
+                if (stream == null) {
+                    throw new IOException("Missing fake " + entry.getValue());
+                }
+                Files.copy(stream, trick, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+}
@@ -2,6 +2,8 @@ package org.screamingsandals.gradle.slib;
 
 import lombok.experimental.UtilityClass;
 
+import java.util.List;
+
 @UtilityClass
 public class Constants {
     public final String SCREAMING_LIB_GROUP_ID = "org.screamingsandals.lib";
@@ -10,9 +12,15 @@ public class Constants {
 
     public final String SANDALS_REPO_NAME = "sandals-repo";
     public final String SANDALS_REPO_URL = "https://repo.screamingsandals.org/public/";
+    public final List<String> SANDALS_REPO_GROUPS = List.of("org\\.screamingsandals(\\..*)?");
 
     public final String PAPER_REPO_NAME = "paper-repo";
     public final String PAPER_REPO_URL = "https://repo.papermc.io/repository/maven-public/";
+    public final List<String> PAPER_REPO_GROUPS = List.of("io\\.papermc(\\..*)?");
+
+    // file based maven mirror made by warmDependencyCache of the builder plugin, replaces all remote repositories if set
+    public final String MIRROR_ENVIRONMENT_VARIABLE = "SCREAMING_MAVEN_MIRROR";
+    public final String MIRROR_REPO_NAME = "screaming-mirror";
 
     public final String IMPLEMENTATION_CONFIGURATION = "implementation";
     public final String API_CONFIGURATION = "api";
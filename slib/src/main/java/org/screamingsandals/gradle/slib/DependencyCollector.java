@@ -0,0 +1,47 @@
+package org.screamingsandals.gradle.slib;
+
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.dsl.DependencyHandler;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dependencies computed from the slib extension, grouped by the configuration they are contributed to.
+ */
+@ApiStatus.Internal
+public class DependencyCollector {
+    private final DependencyHandler handler;
+    private final Map<String, List<Dependency>> dependencies = new HashMap<>();
+
+    public DependencyCollector(@NotNull DependencyHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Creates the dependency without adding it to the project.
+     *
+     * @param configuration configuration the dependency will be contributed to
+     * @param notation dependency notation accepted by {@link DependencyHandler#create(Object)}
+     * @return the created dependency
+     */
+    public Dependency add(@NotNull String configuration, @NotNull Object notation) {
+        var dependency = handler.create(notation);
+        dependencies.computeIfAbsent(configuration, key -> new ArrayList<>()).add(dependency);
+        return dependency;
+    }
+
+    public List<Dependency> get(@NotNull String configuration) {
+        return dependencies.getOrDefault(configuration, List.of());
+    }
+
+    public List<Dependency> all() {
+        var all = new ArrayList<Dependency>();
+        dependencies.values().forEach(all::addAll);
+        return all;
+    }
+}
@@ -0,0 +1,60 @@
+package org.screamingsandals.gradle.slib;
+
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Fakes shipped with this plugin, grouped by platform. The data lives in /fakes/index.properties.
+ */
+@UtilityClass
+public class FakesRegistry {
+    private final String ROOT = "/fakes/";
+    private final Properties INDEX = load();
+
+    /**
+     * @return names of all platforms with at least one fake
+     */
+    public Set<String> platforms() {
+        return INDEX.stringPropertyNames();
+    }
+
+    /**
+     * Key - class file path
+     * Value - resource of this plugin containing the fake
+     *
+     * @param platform platform name
+     * @return fakes of the platform, empty if the platform has none
+     */
+    public Map<String, String> fakesOf(@NotNull String platform) {
+        var classes = INDEX.getProperty(platform);
+        if (classes == null) {
+            return Map.of();
+        }
+        return Arrays.stream(classes.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toMap(s -> s, s -> ROOT + s, (a, b) -> a, TreeMap::new));
+    }
+
+    private Properties load() {
+        var properties = new Properties();
+        try (var stream = FakesRegistry.class.getResourceAsStream(ROOT + "index.properties")) {
+            if (stream == null) {
+                throw new IOException("Missing " + ROOT + "index.properties");
+            }
+            properties.load(stream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return properties;
+    }
+}
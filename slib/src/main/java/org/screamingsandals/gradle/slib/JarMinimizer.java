@@ -0,0 +1,184 @@
+package org.screamingsandals.gradle.slib;
+
+import lombok.Data;
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Drops classes that can't be reached from the plugin main class or the entrypoints named in platform descriptors (plugin.yml, velocity-plugin.json, ...).
+ * <p>
+ * A class is reachable if it is referenced from the bytecode of a reachable class (including string constants naming a class in the jar,
+ * which covers most reflection), if it implements a service whose interface is reachable, or if it matches a keep rule.
+ * Resources are always kept.
+ */
+public class JarMinimizer {
+    private static final String SERVICES = "META-INF/services/";
+    private static final Pattern VERSIONED = Pattern.compile("^META-INF/versions/\\d+/");
+    private static final Pattern YAML_ENTRYPOINT = Pattern.compile("^(?:main|bootstrapper|loader)\\s*:\\s*['\"]?([\\w.$]+)['\"]?\\s*$", Pattern.MULTILINE);
+    private static final Pattern JSON_ENTRYPOINT = Pattern.compile("\"(?:main|entrypoint)\"\\s*:\\s*\"([\\w.$]+)\"");
+    /**
+     * Platform descriptors, the classes they name are loaded by the platform and nothing in the jar references them
+     */
+    private static final Map<String, Pattern> DESCRIPTORS = Map.of(
+            "plugin.yml", YAML_ENTRYPOINT,
+            "paper-plugin.yml", YAML_ENTRYPOINT,
+            "bungee.yml", YAML_ENTRYPOINT,
+            "velocity-plugin.json", JSON_ENTRYPOINT,
+            "extension.json", JSON_ENTRYPOINT,
+            "META-INF/sponge_plugins.json", JSON_ENTRYPOINT
+    );
+
+    private final List<Pattern> keep;
+
+    /**
+     * @param keep class name patterns that are always kept, `*` matches within a package, `**` matches anything
+     */
+    public JarMinimizer(@NotNull Collection<String> keep) {
+        this.keep = keep.stream().map(JarMinimizer::compile).collect(Collectors.toList());
+    }
+
+    /**
+     * @param mainClasses classes to start from, the entrypoints of the platform descriptors in the jar are added to them
+     */
+    public Result minimize(@NotNull Path input, @NotNull Path output, @NotNull Collection<String> mainClasses) throws IOException {
+        try (var zip = new ZipFile(input.toFile())) {
+            // internal name -> entry names (the class itself and its multi-release variants)
+            var classes = new HashMap<String, List<String>>();
+            var services = new HashMap<String, Set<String>>();
+            var roots = new HashSet<>(mainClasses);
+            var entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                var entry = entries.nextElement();
+                var name = entry.getName();
+                if (name.endsWith(".class")) {
+                    var unversioned = VERSIONED.matcher(name).replaceFirst("");
+                    classes.computeIfAbsent(unversioned.substring(0, unversioned.length() - 6), k -> new ArrayList<>()).add(name);
+                } else if (name.startsWith(SERVICES) && !entry.isDirectory()) {
+                    var service = name.substring(SERVICES.length()).replace('.', '/');
+                    new String(zip.getInputStream(entry).readAllBytes(), StandardCharsets.UTF_8).lines()
+                            .map(line -> line.replaceFirst("#.*", "").trim())
+                            .filter(line -> !line.isEmpty())
+                            .forEach(line -> services.computeIfAbsent(service, k -> new HashSet<>()).add(line.replace('.', '/')));
+                } else if (DESCRIPTORS.containsKey(name)) {
+                    var matcher = DESCRIPTORS.get(name).matcher(new String(zip.getInputStream(entry).readAllBytes(), StandardCharsets.UTF_8));
+                    while (matcher.find()) {
+                        roots.add(matcher.group(1));
+                    }
+                }
+            }
+
+            var reachable = new HashSet<String>();
+            var queue = new ArrayDeque<String>();
+            roots.forEach(main -> queue.add(main.replace('.', '/')));
+            classes.keySet().stream()
+                    .filter(name -> name.endsWith("module-info") || name.endsWith("package-info") || isKept(name))
+                    .forEach(queue::add);
+
+            while (!queue.isEmpty()) {
+                var name = queue.poll();
+                if (!classes.containsKey(name) || !reachable.add(name)) {
+                    continue;
+                }
+                for (var entryName : classes.get(name)) {
+                    try (var stream = zip.getInputStream(zip.getEntry(entryName))) {
+                        // the remapper only sees what the delegate asks for, a writer asks for everything including method bodies
+                        new ClassReader(stream).accept(new ClassRemapper(new ClassWriter(0), new Remapper() {
+                            @Override
+                            public String map(String internalName) {
+                                queue.add(internalName);
+                                return internalName;
+                            }
+
+                            @Override
+                            public Object mapValue(Object value) {
+                                if (value instanceof String) {
+                                    var candidate = ((String) value).replace('.', '/');
+                                    if (classes.containsKey(candidate)) {
+                                        queue.add(candidate);
+                                    }
+                                    return value;
+                                }
+                                return super.mapValue(value);
+                            }
+                        }), ClassReader.SKIP_FRAMES);
+                    }
+                }
+                var implementations = services.get(name);
+                if (implementations != null) {
+                    queue.addAll(implementations);
+                }
+            }
+
+            var keptEntries = new HashSet<String>();
+            reachable.forEach(name -> keptEntries.addAll(classes.get(name)));
+
+            long removedBytes = 0;
+            try (var out = new ZipOutputStream(Files.newOutputStream(output))) {
+                var all = zip.entries();
+                while (all.hasMoreElements()) {
+                    var entry = all.nextElement();
+                    if (entry.getName().endsWith(".class") && !keptEntries.contains(entry.getName())) {
+                        removedBytes += entry.getSize();
+                        continue;
+                    }
+                    var copy = new ZipEntry(entry.getName());
+                    copy.setTime(entry.getTime());
+                    out.putNextEntry(copy);
+                    zip.getInputStream(entry).transferTo(out);
+                    out.closeEntry();
+                }
+            }
+
+            return new Result(classes.size(), reachable.size(), removedBytes);
+        }
+    }
+
+    private boolean isKept(String internalName) {
+        var className = internalName.replace('/', '.');
+        return keep.stream().anyMatch(pattern -> pattern.matcher(className).matches());
+    }
+
+    private static Pattern compile(String rule) {
+        var regex = new StringBuilder();
+        for (var i = 0; i < rule.length(); i++) {
+            var c = rule.charAt(i);
+            if (c == '*' && i + 1 < rule.length() && rule.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else if (c == '*') {
+                regex.append("[^.]*");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    @Data
+    public static class Result {
+        private final int classes;
+        private final int keptClasses;
+        private final long removedBytes;
+    }
+}
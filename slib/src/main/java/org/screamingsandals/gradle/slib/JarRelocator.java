@@ -0,0 +1,127 @@
+package org.screamingsandals.gradle.slib;
+
+import com.github.jengelman.gradle.plugins.shadow.ShadowStats;
+import com.github.jengelman.gradle.plugins.shadow.impl.RelocatorRemapper;
+import com.github.jengelman.gradle.plugins.shadow.relocation.Relocator;
+import com.github.jengelman.gradle.plugins.shadow.relocation.SimpleRelocator;
+import org.gradle.api.GradleException;
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.commons.ClassRemapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Applies the same relocation the shadow plugin would apply, but to a single jar or directory at a time.
+ */
+public class JarRelocator {
+    private static final String SERVICES = "META-INF/services/";
+    private static final Pattern MULTI_RELEASE_PREFIX = Pattern.compile("^META-INF/versions/\\d+/");
+    // the same constant Gradle uses for reproducible archives
+    private static final long CONSTANT_TIME = new GregorianCalendar(1980, Calendar.FEBRUARY, 1, 0, 0, 0).getTimeInMillis();
+
+    private final RelocatorRemapper remapper;
+    private final boolean relocateServiceFiles;
+
+    /**
+     * @param relocations pattern to shaded pattern, the first matching one wins
+     * @param relocateServiceFiles whether service file names and contents are relocated too
+     */
+    public JarRelocator(@NotNull Map<String, String> relocations, boolean relocateServiceFiles) {
+        this.relocateServiceFiles = relocateServiceFiles;
+        List<Relocator> relocators = relocations.entrySet().stream()
+                .map(entry -> new SimpleRelocator(entry.getKey(), entry.getValue(), List.of(), List.of()))
+                .collect(Collectors.toList());
+        this.remapper = new RelocatorRemapper(relocators, new ShadowStats());
+    }
+
+    public void relocateJar(@NotNull File input, @NotNull File output) throws IOException {
+        var written = new HashSet<String>();
+        try (var zip = new ZipFile(input);
+             var out = new ZipOutputStream(Files.newOutputStream(output.toPath()))) {
+            var entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                var entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                try (var stream = zip.getInputStream(entry)) {
+                    relocateEntry(entry.getName(), entry.getTime(), stream, out, written);
+                }
+            }
+        }
+    }
+
+    public void relocateDirectory(@NotNull File input, @NotNull ZipOutputStream out, @NotNull Set<String> written) throws IOException {
+        var root = input.toPath();
+        try (var files = Files.walk(root)) {
+            for (var file : (Iterable<Path>) files.filter(Files::isRegularFile).sorted()::iterator) {
+                try (var stream = Files.newInputStream(file)) {
+                    relocateEntry(root.relativize(file).toString().replace(File.separatorChar, '/'), CONSTANT_TIME, stream, out, written);
+                }
+            }
+        }
+    }
+
+    private void relocateEntry(String name, long time, InputStream stream, ZipOutputStream out, Set<String> written) throws IOException {
+        String mappedName;
+        byte[] content;
+        if (name.endsWith(".class")) {
+            content = relocateClass(name, stream);
+            var matcher = MULTI_RELEASE_PREFIX.matcher(name);
+            var prefix = matcher.find() ? matcher.group() : "";
+            mappedName = prefix + remapper.mapPath(name.substring(prefix.length())) + ".class";
+        } else if (relocateServiceFiles && name.startsWith(SERVICES) && name.length() > SERVICES.length()) {
+            mappedName = SERVICES + relocateClassName(name.substring(SERVICES.length()));
+            content = new String(stream.readAllBytes(), StandardCharsets.UTF_8).lines()
+                    .map(line -> line.trim().isEmpty() || line.trim().startsWith("#") ? line : relocateClassName(line.trim()))
+                    .collect(Collectors.joining("\n", "", "\n"))
+                    .getBytes(StandardCharsets.UTF_8);
+        } else {
+            mappedName = remapper.map(name);
+            content = stream.readAllBytes();
+        }
+
+        // the first entry wins, like in shadowJar
+        if (written.add(mappedName)) {
+            var entry = new ZipEntry(mappedName);
+            entry.setTime(time);
+            out.putNextEntry(entry);
+            out.write(content);
+            out.closeEntry();
+        }
+    }
+
+    private byte[] relocateClass(String name, InputStream stream) throws IOException {
+        var reader = new ClassReader(stream);
+        var writer = new ClassWriter(0);
+        try {
+            reader.accept(new ClassRemapper(writer, remapper), ClassReader.EXPAND_FRAMES);
+        } catch (Throwable throwable) {
+            throw new GradleException("Error in ASM processing class " + name, throwable);
+        }
+        return writer.toByteArray();
+    }
+
+    private String relocateClassName(String className) {
+        // map() only handles internal names, string constants go through the class form of the relocators
+        return (String) remapper.mapValue(className);
+    }
+}
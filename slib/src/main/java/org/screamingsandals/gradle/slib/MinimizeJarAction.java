@@ -0,0 +1,53 @@
+package org.screamingsandals.gradle.slib;
+
+import com.github.jengelman.gradle.plugins.shadow.tasks.ShadowJar;
+import org.gradle.api.Action;
+import org.gradle.api.GradleException;
+import org.gradle.api.Task;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites the shadowJar archive with only the classes reachable from the plugin main class and the platform bootstraps, see {@link JarMinimizer}.
+ */
+public class MinimizeJarAction implements Action<Task> {
+    private final File pluginNameFile;
+    private final List<String> keep;
+
+    /**
+     * @param pluginNameFile file the annotation processor saves the plugin main class to
+     * @param keep class name patterns that are always kept
+     */
+    public MinimizeJarAction(@NotNull File pluginNameFile, @NotNull List<String> keep) {
+        this.pluginNameFile = pluginNameFile;
+        this.keep = new ArrayList<>(keep);
+    }
+
+    @Override
+    public void execute(@NotNull Task task) {
+        if (!pluginNameFile.isFile()) {
+            throw new GradleException("Can't minimize " + task.getName() + ": " + pluginNameFile + " doesn't exist, the annotation processor has to be enabled for the common subproject");
+        }
+
+        var jar = ((ShadowJar) task).getArchiveFile().get().getAsFile().toPath();
+        var minimized = jar.resolveSibling(jar.getFileName() + ".min");
+        try {
+            var mainClass = Files.readString(pluginNameFile.toPath(), StandardCharsets.UTF_8).trim();
+            var result = new JarMinimizer(keep).minimize(jar, minimized, List.of(mainClass));
+            Files.move(minimized, jar, StandardCopyOption.REPLACE_EXISTING);
+            task.getLogger().lifecycle("Minimized {}: kept {} of {} classes, removed {} KiB", jar.getFileName(), result.getKeptClasses(), result.getClasses(), result.getRemovedBytes() / 1024);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            minimized.toFile().delete();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.screamingsandals.gradle.slib;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Relocates the classes and resources of the project itself, the dependencies are relocated by {@link RelocateTransform}.
+ */
+public abstract class RelocateClassesTask extends DefaultTask {
+    public static final String NAME = "slibRelocateClasses";
+
+    /**
+     * Pattern to shaded pattern, in the order they are applied
+     */
+    @Input
+    public abstract MapProperty<String, String> getRelocations();
+
+    /**
+     * Whether service file names and contents are relocated, shadowJar does that only with mergeServiceFiles
+     */
+    @Input
+    public abstract Property<Boolean> getRelocateServiceFiles();
+
+    @Classpath
+    public abstract ConfigurableFileCollection getClasses();
+
+    @OutputFile
+    public abstract RegularFileProperty getOutputJar();
+
+    public RelocateClassesTask() {
+        getOutputJar().convention(getProject().getLayout().getBuildDirectory().file("slib/relocated-classes.jar"));
+    }
+
+    @TaskAction
+    public void relocate() throws IOException {
+        var relocator = new JarRelocator(getRelocations().get(), getRelocateServiceFiles().get());
+        var output = getOutputJar().get().getAsFile().toPath();
+        Files.createDirectories(output.getParent());
+
+        var written = new HashSet<String>();
+        try (var out = new ZipOutputStream(Files.newOutputStream(output))) {
+            for (var directory : getClasses()) {
+                if (directory.isDirectory()) {
+                    relocator.relocateDirectory(directory, out, written);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.screamingsandals.gradle.slib;
+
+import org.gradle.api.artifacts.transform.CacheableTransform;
+import org.gradle.api.artifacts.transform.InputArtifact;
+import org.gradle.api.artifacts.transform.TransformAction;
+import org.gradle.api.artifacts.transform.TransformOutputs;
+import org.gradle.api.artifacts.transform.TransformParameters;
+import org.gradle.api.attributes.Attribute;
+import org.gradle.api.file.FileSystemLocation;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Relocates a single dependency jar. Gradle caches the result by the jar content and the relocations,
+ * so unchanged dependencies are not remapped again.
+ */
+@CacheableTransform
+public abstract class RelocateTransform implements TransformAction<RelocateTransform.Parameters> {
+    public static final Attribute<Boolean> RELOCATED = Attribute.of("org.screamingsandals.slib.relocated", Boolean.class);
+
+    public interface Parameters extends TransformParameters {
+        /**
+         * Pattern to shaded pattern, in the order they are applied
+         */
+        @Input
+        MapProperty<String, String> getRelocations();
+
+        /**
+         * Whether service file names and contents are relocated, shadowJar does that only with mergeServiceFiles
+         */
+        @Input
+        Property<Boolean> getRelocateServiceFiles();
+    }
+
+    @InputArtifact
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract Provider<FileSystemLocation> getInputArtifact();
+
+    @Override
+    public void transform(TransformOutputs outputs) {
+        var input = getInputArtifact().get().getAsFile();
+        if (!input.isFile() || !input.getName().endsWith(".jar")) {
+            outputs.file(input);
+            return;
+        }
+
+        var output = outputs.file(input.getName().substring(0, input.getName().length() - 4) + "-relocated.jar");
+        try {
+            new JarRelocator(getParameters().getRelocations().get(), getParameters().getRelocateServiceFiles().get()).relocateJar(input, output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,10 +1,10 @@
 package org.screamingsandals.gradle.slib;
 
 import groovy.lang.Closure;
-import lombok.Data;
-import lombok.Setter;
-import lombok.experimental.Tolerate;
 import org.gradle.api.Action;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
 import org.gradle.api.provider.Provider;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
@@ -12,55 +12,47 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 
-@Data
-public class SLibExtension {
+public abstract class SLibExtension {
     /**
      * ScreamingLib version
      */
-    @Setter(onParam_ = @NotNull) // don't allow users to set it to null
-    private String version;
+    public abstract Property<String> getVersion();
     /**
      * Custom Relocate Path (default to the group id)
      */
-    @Nullable
-    private String customRelocatePath;
+    public abstract Property<String> getCustomRelocatePath();
     /**
-     * Name of the common subproject. If null, this is not a multi module project.
+     * Name of the common subproject. If not set, this is not a multi module project.
      */
-    @Nullable
-    private String multiModuleCommonSubproject;
+    public abstract Property<String> getMultiModuleCommonSubproject();
     /**
-     * Multi module configuration. If null, this is not a multi module project.
+     * Multi module configuration. If empty, this is not a multi module project.
      * <p>
      * Key - Subproject name
      * Value - Platform name
      */
-    @Nullable
-    private Map<String, String> multiModuleConfiguration;
+    public abstract MapProperty<String, String> getMultiModuleConfiguration();
     /**
-     * Name of the universal subproject (containing the final jar). If null, this is not a multi module project.
+     * Name of the universal subproject (containing the final jar). If not set, this is not a multi module project.
      */
-    @Nullable
-    private String multiModuleUniversalSubproject;
+    public abstract Property<String> getMultiModuleUniversalSubproject();
     /**
      * Name of the api subproject. This subproject is optional.
      */
-    @Nullable
-    private String multiModuleApiSubproject;
+    public abstract Property<String> getMultiModuleApiSubproject();
     /**
      * Package name the wrapper class will be relocated to.
      */
-    @Nullable
-    private String multiModuleApiSubprojectApiUtilsWrapperRelocation;
+    public abstract Property<String> getMultiModuleApiSubprojectApiUtilsWrapperRelocation();
     /**
      * Whether `api` configuration should be used instead of `implementation` (sometimes it's better for gradle)
      */
-    private boolean useApiConfigurationInsteadOfImplementation;
+    public abstract Property<Boolean> getUseApiConfigurationInsteadOfImplementation();
     /**
      * Supported platforms
      */
-    private final List<String> platforms = new ArrayList<>();
-    private final List<AdditionalContent> additionalContent = new ArrayList<>();
+    public abstract ListProperty<String> getPlatforms();
+    public abstract ListProperty<AdditionalContent> getAdditionalContent();
 
     /**
      * Disables automatic relocation.
@@ -71,7 +63,33 @@ public class SLibExtension {
      *
      */
     @ApiStatus.Experimental
-    private boolean disableRelocate;
+    public abstract Property<Boolean> getDisableRelocate();
+    /**
+     * Relocates each dependency jar once and reuses the result until the jar or the relocation rules change,
+     * instead of letting shadowJar remap every dependency class on every build.
+     *
+     * <p>
+     *
+     * Note: Relocation rules added to shadowJar directly are not applied to the dependencies in this mode.
+     *
+     */
+    @ApiStatus.Experimental
+    public abstract Property<Boolean> getIncrementalRelocation();
+    /**
+     * Removes classes that can't be reached from the plugin main class from the final jar of the universal subproject.
+     * Classes listed in service files of reachable services and classes named in string constants are treated as reachable.
+     *
+     * <p>
+     *
+     * Note: Classes loaded by computed names are removed, list them in {@link #minimizeKeep(String...)}.
+     *
+     */
+    @ApiStatus.Experimental
+    public abstract Property<Boolean> getMinimizeUniversalJar();
+    /**
+     * Class name patterns kept by {@link #getMinimizeUniversalJar()}, `*` matches within a package, `**` matches anything
+     */
+    public abstract ListProperty<String> getMinimizeKeep();
     /**
      * Disables compiler tricks.
      *
@@ -81,7 +99,7 @@ public class SLibExtension {
      *
      */
     @ApiStatus.Experimental
-    private boolean disableCompilerTricks;
+    public abstract Property<Boolean> getDisableCompilerTricks();
     /**
      * Disables annotation processor.
      *
@@ -91,7 +109,7 @@ public class SLibExtension {
      *
      */
     @ApiStatus.Experimental
-    private boolean disableAnnotationProcessor;
+    public abstract Property<Boolean> getDisableAnnotationProcessor();
     /**
      * Disables kapt.
      *
@@ -102,7 +120,7 @@ public class SLibExtension {
      * The plugin shouldn't be applied before this one.
      */
     @ApiStatus.Experimental
-    private boolean disableAutoKaptApplicationForKotlin;
+    public abstract Property<Boolean> getDisableAutoKaptApplicationForKotlin();
     /**
      * Disables kotlin-sam-with-receiver configuration.
      *
@@ -111,11 +129,25 @@ public class SLibExtension {
      * Note: This can break some functionality.
      */
     @ApiStatus.Experimental
-    private boolean disableAutoSAMWithReceiverConfigurationForKotlin;
+    public abstract Property<Boolean> getDisableAutoSAMWithReceiverConfigurationForKotlin();
 
-    @Tolerate
-    public void setVersion(@NotNull Provider<@NotNull String> version) {
-        this.version = version.get();
+    public SLibExtension() {
+        getUseApiConfigurationInsteadOfImplementation().convention(false);
+        getDisableRelocate().convention(false);
+        getIncrementalRelocation().convention(false);
+        getMinimizeUniversalJar().convention(false);
+        getDisableCompilerTricks().convention(false);
+        getDisableAnnotationProcessor().convention(false);
+        getDisableAutoKaptApplicationForKotlin().convention(false);
+        getDisableAutoSAMWithReceiverConfigurationForKotlin().convention(false);
+    }
+
+    /**
+     * @return true if the common, universal and platform subprojects are configured
+     */
+    @ApiStatus.Internal
+    public boolean isMultiModuleProject() {
+        return !getMultiModuleConfiguration().getOrElse(Map.of()).isEmpty() && getMultiModuleCommonSubproject().isPresent() && getMultiModuleUniversalSubproject().isPresent();
     }
 
     /**
@@ -124,7 +156,7 @@ public class SLibExtension {
      * @param version ScreamingLib version
      */
     public void version(@NotNull String version) {
-        this.version = version;
+        getVersion().set(version);
     }
 
     /**
@@ -133,7 +165,7 @@ public class SLibExtension {
      * @param version ScreamingLib version
      */
     public void version(@NotNull Provider<@NotNull String> version) {
-        this.version = version.get();
+        getVersion().set(version);
     }
 
 
@@ -143,7 +175,7 @@ public class SLibExtension {
      * @param customRelocatePath new custom relocate path or null
      */
     public void customRelocatePath(@Nullable String customRelocatePath) {
-        this.customRelocatePath = customRelocatePath;
+        getCustomRelocatePath().set(customRelocatePath);
     }
 
     /**
@@ -152,7 +184,16 @@ public class SLibExtension {
      * @param platforms array of supported platforms
      */
     public void platforms(@NotNull String @NotNull... platforms) {
-        this.platforms.addAll(Arrays.asList(platforms));
+        getPlatforms().addAll(platforms);
+    }
+
+    /**
+     * Adds class name patterns that are never removed from the minimized universal jar.
+     *
+     * @param patterns class name patterns, `*` matches within a package, `**` matches anything (eg. com.example.commands.**)
+     */
+    public void minimizeKeep(@NotNull String @NotNull... patterns) {
+        getMinimizeKeep().addAll(patterns);
     }
 
     /**
@@ -164,7 +205,7 @@ public class SLibExtension {
      * @param subprojectsDefinition map with subprojects
      */
     public void multiModuleConfiguration(@Nullable Map<@NotNull String, @NotNull String> subprojectsDefinition) {
-        this.multiModuleConfiguration = subprojectsDefinition;
+        getMultiModuleConfiguration().set(subprojectsDefinition);
     }
 
     /**
@@ -173,7 +214,7 @@ public class SLibExtension {
      * @param multiModuleCommonSubproject common subproject name
      */
     public void multiModuleCommonSubproject(@Nullable String multiModuleCommonSubproject) {
-        this.multiModuleCommonSubproject = multiModuleCommonSubproject;
+        getMultiModuleCommonSubproject().set(multiModuleCommonSubproject);
     }
 
     /**
@@ -182,7 +223,7 @@ public class SLibExtension {
      * @param multiModuleUniversalSubproject universal subproject name
      */
     public void multiModuleUniversalSubproject(@Nullable String multiModuleUniversalSubproject) {
-        this.multiModuleUniversalSubproject = multiModuleUniversalSubproject;
+        getMultiModuleUniversalSubproject().set(multiModuleUniversalSubproject);
     }
 
     /**
@@ -196,13 +237,14 @@ public class SLibExtension {
      * @param platforms array of supported platforms
      */
     public void multiModulePlatforms(@NotNull String template, @NotNull String @NotNull... platforms) {
-        this.platforms.addAll(Arrays.asList(platforms));
-        multiModuleConfiguration = new HashMap<>();
+        getPlatforms().addAll(platforms);
+        var configuration = new HashMap<String, String>();
         for (var platform : platforms) {
-            multiModuleConfiguration.put(String.format(template, platform), platform);
+            configuration.put(String.format(template, platform), platform);
         }
-        multiModuleCommonSubproject = String.format(template, "common");
-        multiModuleUniversalSubproject = String.format(template, "universal");
+        getMultiModuleConfiguration().set(configuration);
+        getMultiModuleCommonSubproject().set(String.format(template, "common"));
+        getMultiModuleUniversalSubproject().set(String.format(template, "universal"));
     }
 
     /**
@@ -211,7 +253,7 @@ public class SLibExtension {
      * @param api api subproject name
      */
     public void multiModuleApiSubproject(@NotNull String api) {
-        this.multiModuleApiSubproject = api;
+        getMultiModuleApiSubproject().set(api);
     }
 
     /**
@@ -221,8 +263,8 @@ public class SLibExtension {
      * @param slibApiPackage the new slib api package
      */
     public void multiModuleApiSubproject(@NotNull String api, @Nullable String slibApiPackage) {
-        this.multiModuleApiSubproject = api;
-        this.multiModuleApiSubprojectApiUtilsWrapperRelocation = slibApiPackage;
+        getMultiModuleApiSubproject().set(api);
+        getMultiModuleApiSubprojectApiUtilsWrapperRelocation().set(slibApiPackage);
     }
 
     /**
@@ -231,7 +273,7 @@ public class SLibExtension {
      * @param useApiConfigurationInsteadOfImplementation true if `api` should be used
      */
     public void useApiConfigurationInsteadOfImplementation(boolean useApiConfigurationInsteadOfImplementation) {
-        this.useApiConfigurationInsteadOfImplementation = useApiConfigurationInsteadOfImplementation;
+        getUseApiConfigurationInsteadOfImplementation().set(useApiConfigurationInsteadOfImplementation);
     }
 
     /**
@@ -240,8 +282,9 @@ public class SLibExtension {
      * @param consumer additional content builder
      */
     public void additionalContent(@NotNull Action<@NotNull AdditionalContentBuilder> consumer) {
-        var builder = new AdditionalContentBuilder(additionalContent);
-        consumer.execute(builder);
+        var additionalContent = new ArrayList<AdditionalContent>();
+        consumer.execute(new AdditionalContentBuilder(additionalContent));
+        getAdditionalContent().addAll(additionalContent);
     }
 
     /**
@@ -250,9 +293,11 @@ public class SLibExtension {
      * @param closure additional content builder
      */
     public void additionalContent(Closure<AdditionalContentBuilder> closure) {
+        var additionalContent = new ArrayList<AdditionalContent>();
         var builder = new AdditionalContentBuilder(additionalContent);
         closure.setDelegate(builder);
         closure.setResolveStrategy(Closure.DELEGATE_FIRST);
         closure.call(builder);
+        getAdditionalContent().addAll(additionalContent);
     }
 }
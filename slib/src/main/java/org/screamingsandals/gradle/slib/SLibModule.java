@@ -1,7 +1,6 @@
 package org.screamingsandals.gradle.slib;
 
 import lombok.Data;
-import org.gradle.api.artifacts.dsl.DependencyHandler;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
 
@@ -18,7 +17,7 @@ public class SLibModule implements AdditionalContent {
     @Override
     @ApiStatus.Internal
     @ApiStatus.OverrideOnly
-    public void apply(String configuration, DependencyHandler dependencies, String slibVersion, List<String> platforms) {
+    public void apply(String configuration, DependencyCollector dependencies, String slibVersion, List<String> platforms) {
         dependencies.add(configuration, Constants.SCREAMING_LIB_GROUP_ID + ":" + name + "-common:" + slibVersion);
         platforms.forEach(s ->
                 dependencies.add(configuration, Constants.SCREAMING_LIB_GROUP_ID + ":" + name + "-" + s + ":" + slibVersion)
@@ -26,7 +25,7 @@ public class SLibModule implements AdditionalContent {
     }
 
     @Override
-    public void applyMultiModule(String configuration, DependencyHandler dependencies, String slibVersion, String platformName) {
+    public void applyMultiModule(String configuration, DependencyCollector dependencies, String slibVersion, String platformName) {
         dependencies.add(configuration, Constants.SCREAMING_LIB_GROUP_ID + ":" + name + "-" + platformName + ":" + slibVersion);
     }
 }
@@ -2,221 +2,432 @@ package org.screamingsandals.gradle.slib;
 
 import com.github.jengelman.gradle.plugins.shadow.ShadowPlugin;
 import com.github.jengelman.gradle.plugins.shadow.tasks.ShadowJar;
+import com.github.jengelman.gradle.plugins.shadow.transformers.ServiceFileTransformer;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.artifacts.ExternalModuleDependency;
+import org.gradle.api.artifacts.type.ArtifactTypeDefinition;
+import org.gradle.api.attributes.Attribute;
+import org.gradle.api.attributes.AttributeContainer;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.SourceSetContainer;
 import org.gradle.api.tasks.compile.JavaCompile;
+import org.gradle.build.event.BuildEventsListenerRegistry;
+import org.gradle.process.CommandLineArgumentProvider;
 import org.jetbrains.kotlin.samWithReceiver.gradle.SamWithReceiverExtension;
+import org.screamingsandals.gradle.metrics.BuildMetricsService;
+
+import javax.inject.Inject;
 
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
 
 public class SLibPlugin implements Plugin<Project> {
+    public static final String RELOCATED_RUNTIME_CLASSPATH = "slibRelocatedRuntimeClasspath";
+    public static final String COMPILER_TRICKS_CONFIGURATION = "slibCompilerTricks";
+
+    private final BuildEventsListenerRegistry eventsListenerRegistry;
+
+    @Inject
+    public SLibPlugin(BuildEventsListenerRegistry eventsListenerRegistry) {
+        this.eventsListenerRegistry = eventsListenerRegistry;
+    }
+
     @Override
     public void apply(Project project) {
+        BuildMetricsService.register(project, eventsListenerRegistry);
+
         project.apply(it -> {
            it.plugin(ShadowPlugin.class);
         });
 
-        project.getRepositories().add(project.getRepositories().mavenCentral());
+        var mirror = System.getenv(Constants.MIRROR_ENVIRONMENT_VARIABLE);
+        if (mirror != null && !mirror.isEmpty()) {
+            if (project.getRepositories().findByName(Constants.MIRROR_REPO_NAME) == null) {
+                project.getRepositories().add(
+                        project.getRepositories().maven(it -> {
+                            it.setName(Constants.MIRROR_REPO_NAME);
+                            it.setUrl(mirror.contains("://") ? mirror : project.file(mirror).toURI());
+                        })
+                );
+            }
+        } else {
+            // artifacts of each repository below are never published anywhere else, so the others aren't asked for them
+            project.getRepositories().add(project.getRepositories().mavenCentral(it -> it.content(content -> {
+                Constants.SANDALS_REPO_GROUPS.forEach(content::excludeGroupByRegex);
+                Constants.PAPER_REPO_GROUPS.forEach(content::excludeGroupByRegex);
+            })));
 
-        if (project.getRepositories().findByName(Constants.SANDALS_REPO_NAME) == null) {
-            project.getRepositories().add(
-                    project.getRepositories().maven(it -> {
-                        it.setName(Constants.SANDALS_REPO_NAME);
-                        it.setUrl(Constants.SANDALS_REPO_URL);
-                    })
-            );
-        }
+            if (project.getRepositories().findByName(Constants.SANDALS_REPO_NAME) == null) {
+                project.getRepositories().add(
+                        project.getRepositories().maven(it -> {
+                            it.setName(Constants.SANDALS_REPO_NAME);
+                            it.setUrl(Constants.SANDALS_REPO_URL);
+                            it.content(content -> Constants.PAPER_REPO_GROUPS.forEach(content::excludeGroupByRegex));
+                        })
+                );
+            }
 
-        if (project.getRepositories().findByName(Constants.PAPER_REPO_NAME) == null) {
-            project.getRepositories().add(
-                    project.getRepositories().maven(it -> {
-                        it.setName(Constants.PAPER_REPO_NAME);
-                        it.setUrl(Constants.PAPER_REPO_URL);
-                    })
-            );
+            if (project.getRepositories().findByName(Constants.PAPER_REPO_NAME) == null) {
+                project.getRepositories().add(
+                        project.getRepositories().maven(it -> {
+                            it.setName(Constants.PAPER_REPO_NAME);
+                            it.setUrl(Constants.PAPER_REPO_URL);
+                            it.content(content -> Constants.SANDALS_REPO_GROUPS.forEach(content::excludeGroupByRegex));
+                        })
+                );
+            }
         }
 
         var extension = project.getExtensions().create("slib", SLibExtension.class);
 
-        project.afterEvaluate(project1 -> {
-            if (extension.getVersion() == null) {
-                return; // Not configured
-            }
+        // Applying a plugin can't be deferred to a provider, and neither can shadow's relocation rules;
+        // what to do with them is only known once the build script has run
+        project.afterEvaluate(BuildMetricsService.timed(project, "slib " + project.getPath(), project1 -> configureEvaluated(project1, extension)));
 
-            if (project.getPlugins().hasPlugin("org.jetbrains.kotlin.jvm")) {
-                if (!extension.isDisableAutoKaptApplicationForKotlin() && !project.getPlugins().hasPlugin("org.jetbrains.kotlin.kapt")){
-                    project.getPlugins().apply("org.jetbrains.kotlin.kapt");
-                    System.out.println("Kapt was automatically added to your classpath. You may now see some warnings about version mismatch, to fix that, add kapt plugin yourself (the plugin must be applied after the slib plugin)");
-                }
-                if (!extension.isDisableAutoSAMWithReceiverConfigurationForKotlin() && project.getPlugins().hasPlugin("kotlin-sam-with-receiver")) {
-                    project.getExtensions().getByType(SamWithReceiverExtension.class).annotation("org.screamingsandals.lib.utils.annotations.ImplicitReceiver");
-                }
+        // computed when a configuration is resolved, so the build script (and the other subprojects) can still change the extension until then
+        var dependencies = project.provider(() -> collectDependencies(project, extension));
+        project.getPluginManager().withPlugin("java", plugin -> {
+            contribute(project, Constants.IMPLEMENTATION_CONFIGURATION, dependencies);
+            contribute(project, Constants.ANNOTATION_PROCESSOR, dependencies);
+            project.getTasks().named("compileJava", JavaCompile.class).configure(compileJava ->
+                    compileJava.getOptions().getCompilerArgumentProviders().add(new AnnotationProcessorArguments(project.provider(() -> annotationProcessorArguments(project, extension))))
+            );
+        });
+        project.getPluginManager().withPlugin("java-library", plugin -> contribute(project, Constants.API_CONFIGURATION, dependencies));
+        project.getPluginManager().withPlugin("org.jetbrains.kotlin.kapt", plugin -> contribute(project, Constants.KAPT, dependencies));
+
+        // all modules of one release are resolved to the same version, even if something brings an older or newer one transitively
+        project.getDependencies().getComponents().all(VirtualPlatformRule.class, rule -> rule.params(Constants.SCREAMING_LIB_GROUP_ID));
+        project.getDependencies().getComponents().all(VirtualPlatformRule.class, rule -> rule.params(Constants.SIMPLE_INVENTORIES_GROUP_ID));
+        project.getTasks().register(VersionCatalogTask.NAME, VersionCatalogTask.class, task -> {
+            task.getVersion().set(extension.getVersion());
+            task.getLibraries().putAll(dependencies.map(SLibPlugin::catalogLibraries));
+        });
+
+        /**
+         * This allows us to build the final product without depending on the platform api.
+         */
+        var compilerTricks = project.getTasks().register(CompilerTricksTask.NAME, CompilerTricksTask.class);
+        var compilerTricksDependency = project.getDependencies().create(project.files(compilerTricks));
+        var compilerTricksConfiguration = project.getConfigurations().create(COMPILER_TRICKS_CONFIGURATION, configuration -> {
+            configuration.setCanBeConsumed(false);
+            configuration.setCanBeResolved(false);
+            configuration.setDescription("Fakes of platform classes the compile classpath lacks");
+            configuration.getDependencies().add(compilerTricksDependency);
+        });
+        project.getPluginManager().withPlugin("java", plugin -> {
+            // through compileOnly the fakes reach kapt and the IDE too, not just compileJava (tests don't inherit compileOnly)
+            project.getConfigurations().named("compileOnly").configure(compileOnly -> compileOnly.extendsFrom(compilerTricksConfiguration));
+            project.getConfigurations().named("testCompileOnly").configure(testCompileOnly -> testCompileOnly.extendsFrom(compilerTricksConfiguration));
+            compilerTricks.configure(task -> {
+                task.getFakes().putAll(project.provider(() -> fakes(project, extension)));
+                // the fakes themselves are left out, the task would depend on its own output otherwise
+                task.getClasspath().from(project.provider(() -> project.getConfigurations().getByName("compileClasspath").copyRecursive(dependency -> dependency != compilerTricksDependency)));
+            });
+        });
+    }
+
+    private void configureEvaluated(Project project, SLibExtension extension) {
+        if (!extension.getVersion().isPresent()) {
+            return; // Not configured
+        }
+        if (project.getPlugins().hasPlugin("org.jetbrains.kotlin.jvm")) {
+            if (!extension.getDisableAutoKaptApplicationForKotlin().get() && !project.getPlugins().hasPlugin("org.jetbrains.kotlin.kapt")) {
+                project.getPlugins().apply("org.jetbrains.kotlin.kapt");
+                System.out.println("Kapt was automatically added to your classpath. You may now see some warnings about version mismatch, to fix that, add kapt plugin yourself (the plugin must be applied after the slib plugin)");
             }
-            var multiModuleProject = extension.getMultiModuleConfiguration() != null && extension.getMultiModuleCommonSubproject() != null && extension.getMultiModuleUniversalSubproject() != null;
-            var implConfig = extension.isUseApiConfigurationInsteadOfImplementation() ? Constants.API_CONFIGURATION : Constants.IMPLEMENTATION_CONFIGURATION;
-
-            var dependencies = project1.getDependencies();
-            if (multiModuleProject && project1.getName().equals(extension.getMultiModuleApiSubproject())) {
-                dependencies.add(implConfig, Constants.SCREAMING_LIB_GROUP_ID + ":api-utils:" + extension.getVersion());
-                if (extension.getMultiModuleApiSubprojectApiUtilsWrapperRelocation() != null) {
-                    var shadowJar = project1.getTasks().withType(ShadowJar.class).getByName("shadowJar");
-                    shadowJar.relocate("org.screamingsandals.lib.utils.Wrapper", extension.getMultiModuleApiSubprojectApiUtilsWrapperRelocation());
-                }
-                return;
+            if (!extension.getDisableAutoSAMWithReceiverConfigurationForKotlin().get() && project.getPlugins().hasPlugin("kotlin-sam-with-receiver")) {
+                project.getExtensions().getByType(SamWithReceiverExtension.class).annotation("org.screamingsandals.lib.utils.annotations.ImplicitReceiver");
             }
-            if (multiModuleProject && extension.getMultiModuleUniversalSubproject().equals(project1.getName())) {
-                dependencies.add(implConfig, project1.project(":" + extension.getMultiModuleCommonSubproject()));
-                for (var pr : extension.getMultiModuleConfiguration().keySet()) {
-                    dependencies.add(implConfig, project1.project(":" + pr));
-                }
-                relocate(project1, extension);
-                return;
+        }
+        project.getTasks().named("shadowJar", ShadowJar.class).configure(BuildMetricsService.timed(project, "slib shadowJar " + project.getPath(), shadowJar -> configureShadowJar(project, extension, shadowJar)));
+    }
+
+    private void contribute(Project project, String configurationName, Provider<DependencyCollector> dependencies) {
+        project.getConfigurations().named(configurationName).configure(configuration ->
+                configuration.getDependencies().addAllLater(dependencies.map(collector -> collector.get(configurationName)))
+        );
+    }
+
+    private static Map<String, String> catalogLibraries(DependencyCollector collector) {
+        var libraries = new TreeMap<String, String>();
+        collector.all().stream()
+                .filter(ExternalModuleDependency.class::isInstance)
+                .forEach(dependency -> {
+                    var prefix = Constants.SCREAMING_LIB_GROUP_ID.equals(dependency.getGroup()) ? VersionCatalogTask.VERSION_ALIAS + "-"
+                            : Constants.SIMPLE_INVENTORIES_GROUP_ID.equals(dependency.getGroup()) ? "simpleinventories-" : "";
+                    libraries.put(prefix + dependency.getName(), dependency.getGroup() + ":" + dependency.getName() + ":" + dependency.getVersion());
+                });
+        return libraries;
+    }
+
+    private DependencyCollector collectDependencies(Project project1, SLibExtension extension) {
+        var dependencies = new DependencyCollector(project1.getDependencies());
+        if (!extension.getVersion().isPresent()) {
+            return dependencies; // Not configured
+        }
+        var version = extension.getVersion().get();
+        var platforms = extension.getPlatforms().get();
+        var multiModuleProject = extension.isMultiModuleProject();
+        var multiModuleConfiguration = extension.getMultiModuleConfiguration().getOrElse(Map.of());
+        var commonSubproject = extension.getMultiModuleCommonSubproject().getOrNull();
+        var apiSubproject = extension.getMultiModuleApiSubproject().getOrNull();
+        var implConfig = extension.getUseApiConfigurationInsteadOfImplementation().get() ? Constants.API_CONFIGURATION : Constants.IMPLEMENTATION_CONFIGURATION;
+
+        if (multiModuleProject && project1.getName().equals(apiSubproject)) {
+            dependencies.add(implConfig, Constants.SCREAMING_LIB_GROUP_ID + ":api-utils:" + version);
+            return dependencies;
+        }
+        if (multiModuleProject && extension.getMultiModuleUniversalSubproject().get().equals(project1.getName())) {
+            dependencies.add(implConfig, project1.project(":" + commonSubproject));
+            for (var pr : multiModuleConfiguration.keySet()) {
+                dependencies.add(implConfig, project1.project(":" + pr));
             }
+            return dependencies;
+        }
 
-            if (extension.getPlatforms().stream().allMatch(s -> s.equals("bungee") || s.equals("velocity"))) {
-                // Proxy
-                if (multiModuleProject) {
-                    if (extension.getMultiModuleCommonSubproject().equals(project1.getName())) {
-                        dependencies.add(implConfig, Constants.SCREAMING_LIB_GROUP_ID + ":proxy-common:" + extension.getVersion());
-                        if (extension.getMultiModuleApiSubproject() != null) {
-                            dependencies.add(implConfig, project1.project(":" + extension.getMultiModuleApiSubproject()));
-                        }
-                    } else if (extension.getMultiModuleConfiguration().containsKey(project1.getName())) {
-                        var platform = extension.getMultiModuleConfiguration().get(project1.getName());
-                        if (!extension.getPlatforms().contains(platform)) {
-                            throw new UnsupportedOperationException("Malformed multi module project configuration: Platform " + platform + " is not configured, but is in multiModuleConfiguration map!");
-                        }
-                        dependencies.add(implConfig, project1.project(":" + extension.getMultiModuleCommonSubproject()));
-                        dependencies.add(implConfig, Constants.SCREAMING_LIB_GROUP_ID + ":proxy-" + platform + ":" + extension.getVersion());
-                    } else {
-                        throw new UnsupportedOperationException("Can't determine what is this subproject for: " + project1.getName());
+        if (platforms.stream().allMatch(s -> s.equals("bungee") || s.equals("velocity"))) {
+            // Proxy
+            if (multiModuleProject) {
+                if (commonSubproject.equals(project1.getName())) {
+                    dependencies.add(implConfig, Constants.SCREAMING_LIB_GROUP_ID + ":proxy-common:" + version);
+                    if (apiSubproject != null) {
+                        dependencies.add(implConfig, project1.project(":" + apiSubproject));
                     }
-                } else {
-                    dependencies.add(implConfig, Constants.SCREAMING_LIB_GROUP_ID + ":proxy-common:" + extension.getVersion());
-                    extension.getPlatforms().forEach(s -> {
-                        dependencies.add(implConfig, Constants.SCREAMING_LIB_GROUP_ID + ":proxy-" + s + ":" + extension.getVersion());
-                    });
-                }
-            } else if (extension.getPlatforms().stream().noneMatch(s -> s.equals("bungee") || s.equals("velocity"))) {
-                // Core
-                if (multiModuleProject) {
-                    if (extension.getMultiModuleCommonSubproject().equals(project1.getName())) {
-                        dependencies.add(implConfig, Constants.SCREAMING_LIB_GROUP_ID + ":core-common:" + extension.getVersion());
-                        if (extension.getMultiModuleApiSubproject() != null) {
-                            dependencies.add(implConfig, project1.project(":" + extension.getMultiModuleApiSubproject()));
-                        }
-                    } else if (extension.getMultiModuleConfiguration().containsKey(project1.getName())) {
-                        var platform = extension.getMultiModuleConfiguration().get(project1.getName());
-                        if (!extension.getPlatforms().contains(platform)) {
-                            throw new UnsupportedOperationException("Malformed multi module project configuration: Platform " + platform + " is not configured, but is in multiModuleConfiguration map!");
-                        }
-                        dependencies.add(implConfig, project1.project(":" + extension.getMultiModuleCommonSubproject()));
-                        dependencies.add(implConfig, Constants.SCREAMING_LIB_GROUP_ID + ":core-" + platform + ":" + extension.getVersion());
-                    } else {
-                        throw new UnsupportedOperationException("Can't determine what is this subproject for: " + project1.getName());
+                } else if (multiModuleConfiguration.containsKey(project1.getName())) {
+                    var platform = multiModuleConfiguration.get(project1.getName());
+                    if (!platforms.contains(platform)) {
+                        throw new UnsupportedOperationException("Malformed multi module project configuration: Platform " + platform + " is not configured, but is in multiModuleConfiguration map!");
                     }
+                    dependencies.add(implConfig, project1.project(":" + commonSubproject));
+                    dependencies.add(implConfig, Constants.SCREAMING_LIB_GROUP_ID + ":proxy-" + platform + ":" + version);
                 } else {
-                    dependencies.add(implConfig, Constants.SCREAMING_LIB_GROUP_ID + ":core-common:" + extension.getVersion());
-                    extension.getPlatforms().forEach(s -> {
-                        dependencies.add(implConfig, Constants.SCREAMING_LIB_GROUP_ID + ":core-" + s + ":" + extension.getVersion());
-                    });
+                    throw new UnsupportedOperationException("Can't determine what is this subproject for: " + project1.getName());
                 }
             } else {
-                throw new UnsupportedOperationException("Can't mix Proxy and Core modules together! Please create separated projects or subprojects for proxy and for core!");
+                dependencies.add(implConfig, Constants.SCREAMING_LIB_GROUP_ID + ":proxy-common:" + version);
+                platforms.forEach(s -> {
+                    dependencies.add(implConfig, Constants.SCREAMING_LIB_GROUP_ID + ":proxy-" + s + ":" + version);
+                });
             }
-
+        } else if (platforms.stream().noneMatch(s -> s.equals("bungee") || s.equals("velocity"))) {
+            // Core
             if (multiModuleProject) {
-                if (extension.getMultiModuleCommonSubproject().equals(project1.getName())) {
-                    extension.getAdditionalContent().forEach(additionalContent ->
-                            additionalContent.applyMultiModule(implConfig, dependencies, extension.getVersion(), "common")
-                    );
-                } else if (extension.getMultiModuleConfiguration().containsKey(project1.getName())) {
-                    var platform = extension.getMultiModuleConfiguration().get(project1.getName());
-                    if (!extension.getPlatforms().contains(platform)) {
+                if (commonSubproject.equals(project1.getName())) {
+                    dependencies.add(implConfig, Constants.SCREAMING_LIB_GROUP_ID + ":core-common:" + version);
+                    if (apiSubproject != null) {
+                        dependencies.add(implConfig, project1.project(":" + apiSubproject));
+                    }
+                } else if (multiModuleConfiguration.containsKey(project1.getName())) {
+                    var platform = multiModuleConfiguration.get(project1.getName());
+                    if (!platforms.contains(platform)) {
                         throw new UnsupportedOperationException("Malformed multi module project configuration: Platform " + platform + " is not configured, but is in multiModuleConfiguration map!");
                     }
-                    extension.getAdditionalContent().forEach(additionalContent ->
-                            additionalContent.applyMultiModule(implConfig, dependencies, extension.getVersion(), platform)
-                    );
+                    dependencies.add(implConfig, project1.project(":" + commonSubproject));
+                    dependencies.add(implConfig, Constants.SCREAMING_LIB_GROUP_ID + ":core-" + platform + ":" + version);
                 } else {
                     throw new UnsupportedOperationException("Can't determine what is this subproject for: " + project1.getName());
                 }
             } else {
-                extension.getAdditionalContent().forEach(additionalContent ->
-                        additionalContent.apply(implConfig, dependencies, extension.getVersion(), extension.getPlatforms())
+                dependencies.add(implConfig, Constants.SCREAMING_LIB_GROUP_ID + ":core-common:" + version);
+                platforms.forEach(s -> {
+                    dependencies.add(implConfig, Constants.SCREAMING_LIB_GROUP_ID + ":core-" + s + ":" + version);
+                });
+            }
+        } else {
+            throw new UnsupportedOperationException("Can't mix Proxy and Core modules together! Please create separated projects or subprojects for proxy and for core!");
+        }
+
+        if (multiModuleProject) {
+            if (commonSubproject.equals(project1.getName())) {
+                extension.getAdditionalContent().get().forEach(additionalContent ->
+                        additionalContent.applyMultiModule(implConfig, dependencies, version, "common")
+                );
+            } else {
+                var platform = multiModuleConfiguration.get(project1.getName());
+                extension.getAdditionalContent().get().forEach(additionalContent ->
+                        additionalContent.applyMultiModule(implConfig, dependencies, version, platform)
                 );
             }
-            if (!extension.isDisableAnnotationProcessor()) {
-                if (project.getPlugins().hasPlugin("kotlin-kapt")) {
-                    dependencies.add(Constants.KAPT, Constants.SCREAMING_LIB_GROUP_ID + ":annotation:" + extension.getVersion());
-                } else {
-                    dependencies.add(Constants.ANNOTATION_PROCESSOR, Constants.SCREAMING_LIB_GROUP_ID + ":annotation:" + extension.getVersion());
-                }
-                if (multiModuleProject) {
-                    var compileJava = project1.getTasks().withType(JavaCompile.class).getByName("compileJava");
-                    var file = project.project(":" + extension.getMultiModuleCommonSubproject()).getBuildDir().toPath().resolve("slib/pluginName.txt").toAbsolutePath().toString();
-                    if (extension.getMultiModuleCommonSubproject().equals(project1.getName())) {
-                        compileJava.getOptions().getCompilerArgs().add("-AlookForPluginAndSaveFullClassNameTo=" + file);
-                    } else {
-                        compileJava.getOptions().getCompilerArgs().add("-AusePluginClassFrom=" + file);
-                    }
-                }
+        } else {
+            extension.getAdditionalContent().get().forEach(additionalContent ->
+                    additionalContent.apply(implConfig, dependencies, version, platforms)
+            );
+        }
+        if (!extension.getDisableAnnotationProcessor().get()) {
+            // kapt is applied after evaluation, this runs later than that
+            if (project1.getPlugins().hasPlugin("org.jetbrains.kotlin.kapt")) {
+                dependencies.add(Constants.KAPT, Constants.SCREAMING_LIB_GROUP_ID + ":annotation:" + version);
+            } else {
+                dependencies.add(Constants.ANNOTATION_PROCESSOR, Constants.SCREAMING_LIB_GROUP_ID + ":annotation:" + version);
             }
+        }
+        return dependencies;
+    }
 
-            /**
-             * This allows us to build the final product without depending on Bukkit api.
-             */
-            if (!extension.isDisableCompilerTricks()
-                    && (multiModuleProject ? "bukkit".equals(extension.getMultiModuleConfiguration().get(project1.getName())) : extension.getPlatforms().contains("bukkit"))) {
-                // TODO: check if there's no bukkit in classpath
-                try {
-                    var slibCompilationTricks = Files.createTempDirectory("slibCompilationTricks").toFile().getAbsoluteFile();
-
-                    var fakesMap = Map.of(
-                        "org/bukkit/plugin/java/JavaPlugin.class", "/fakes/JavaPlugin.class",
-                        "org/bukkit/plugin/Plugin.class", "/fakes/Plugin.class",
-                        "org/bukkit/plugin/PluginBase.class", "/fakes/PluginBase.class",
-                        "org/slf4j/Logger.class", "/fakes/Logger.class"
-                    );
-
-                    for (var entry : fakesMap.entrySet()) {
-                        var className = entry.getKey();
-                        var savedFake = entry.getValue();
-
-                        var stream = SLibPlugin.class.getResourceAsStream(savedFake);
-                        var trick = new File(slibCompilationTricks, className);
-                        trick.getParentFile().mkdirs();
-                        Files.copy(stream, trick.toPath());
-                    }
+    private List<String> annotationProcessorArguments(Project project1, SLibExtension extension) {
+        if (!extension.getVersion().isPresent() || extension.getDisableAnnotationProcessor().get() || !extension.isMultiModuleProject()
+                || project1.getName().equals(extension.getMultiModuleApiSubproject().getOrNull())
+                || project1.getName().equals(extension.getMultiModuleUniversalSubproject().get())) {
+            return List.of();
+        }
+        var file = pluginNameFile(project1, extension).getAbsolutePath();
+        if (extension.getMultiModuleCommonSubproject().get().equals(project1.getName())) {
+            return List.of("-AlookForPluginAndSaveFullClassNameTo=" + file);
+        } else {
+            return List.of("-AusePluginClassFrom=" + file);
+        }
+    }
 
-                    dependencies.add("compileOnly", project1.files(slibCompilationTricks));
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-            // TODO: bungee
-            // TODO: velocity
-            // TODO: minestom
-            // TODO: sponge
+    private Map<String, String> fakes(Project project1, SLibExtension extension) {
+        var fakes = new TreeMap<String, String>();
+        if (!extension.getVersion().isPresent() || extension.getDisableCompilerTricks().get()) {
+            return fakes;
+        }
+        var multiModuleProject = extension.isMultiModuleProject();
+        if (multiModuleProject && (project1.getName().equals(extension.getMultiModuleApiSubproject().getOrNull()) || project1.getName().equals(extension.getMultiModuleUniversalSubproject().get()))) {
+            return fakes;
+        }
+        var projectPlatforms = multiModuleProject ? Collections.singletonList(extension.getMultiModuleConfiguration().get().get(project1.getName())) : extension.getPlatforms().get();
+        projectPlatforms.stream()
+                .filter(Objects::nonNull)
+                .forEach(platform -> fakes.putAll(FakesRegistry.fakesOf(platform)));
+        return fakes;
+    }
 
-            if (!extension.isDisableRelocate() && !multiModuleProject) {
-                relocate(project1, extension);
+    private void configureShadowJar(Project project1, SLibExtension extension, ShadowJar shadowJar) {
+        var multiModuleProject = extension.isMultiModuleProject();
+        if (multiModuleProject && project1.getName().equals(extension.getMultiModuleApiSubproject().getOrNull())) {
+            if (extension.getMultiModuleApiSubprojectApiUtilsWrapperRelocation().isPresent()) {
+                shadowJar.relocate("org.screamingsandals.lib.utils.Wrapper", extension.getMultiModuleApiSubprojectApiUtilsWrapperRelocation().get());
             }
+            return;
+        }
+        if (multiModuleProject && extension.getMultiModuleUniversalSubproject().get().equals(project1.getName())) {
+            relocate(project1, extension, shadowJar);
+            if (extension.getMinimizeUniversalJar().get()) {
+                minimize(project1, extension, shadowJar);
+            }
+            return;
+        }
+        if (!extension.getDisableRelocate().get() && !multiModuleProject) {
+            relocate(project1, extension, shadowJar);
+        }
+    }
+
+    private void relocate(Project project1, SLibExtension extension, ShadowJar shadowJar) {
+        var path = extension.getCustomRelocatePath().getOrElse(project1.getGroup() + ".lib");
+        var relocations = new LinkedHashMap<String, String>();
+        if (extension.getMultiModuleApiSubprojectApiUtilsWrapperRelocation().isPresent()) {
+            relocations.put("org.screamingsandals.lib.api", extension.getMultiModuleApiSubprojectApiUtilsWrapperRelocation().get());
+        }
+        relocations.put("org.screamingsandals.lib", path);
+        if (extension.getAdditionalContent().get().stream().anyMatch(additionalContent -> additionalContent instanceof ThirdPartyModule && ((ThirdPartyModule) additionalContent).getGroupId().equals(Constants.SIMPLE_INVENTORIES_GROUP_ID))) {
+            relocations.put("org.screamingsandals.simpleinventories", path + ".inventories");
+        }
+
+        if (!extension.getIncrementalRelocation().get()) {
+            relocations.forEach(shadowJar::relocate);
+            return;
+        }
+
+        var dependencies = project1.getDependencies();
+        dependencies.getArtifactTypes().maybeCreate("jar").getAttributes().attribute(RelocateTransform.RELOCATED, false);
+        dependencies.registerTransform(RelocateTransform.class, spec -> {
+            spec.getFrom().attribute(ArtifactTypeDefinition.ARTIFACT_TYPE_ATTRIBUTE, "jar").attribute(RelocateTransform.RELOCATED, false);
+            spec.getTo().attribute(ArtifactTypeDefinition.ARTIFACT_TYPE_ATTRIBUTE, "jar").attribute(RelocateTransform.RELOCATED, true);
+            spec.getParameters().getRelocations().putAll(relocations);
+            spec.getParameters().getRelocateServiceFiles().set(relocatesServiceFiles(shadowJar));
         });
+
+        // shadowJar needs a real configuration for its dependency filters
+        var runtimeClasspath = project1.getConfigurations().getByName("runtimeClasspath");
+        var relocatedClasspath = project1.getConfigurations().create(RELOCATED_RUNTIME_CLASSPATH, configuration -> {
+            configuration.setCanBeConsumed(false);
+            configuration.setCanBeResolved(true);
+            configuration.setVisible(false);
+            configuration.setExtendsFrom(runtimeClasspath.getExtendsFrom());
+            configuration.shouldResolveConsistentlyWith(runtimeClasspath);
+            runtimeClasspath.getAttributes().keySet().forEach(key -> copyAttribute(runtimeClasspath.getAttributes(), configuration.getAttributes(), key));
+            configuration.getAttributes().attribute(RelocateTransform.RELOCATED, true);
+        });
+        shadowJar.setConfigurations(List.of(relocatedClasspath));
+
+        // own classes are remapped on every change, they are replaced in shadowJar by the relocated jar
+        var mainOutput = project1.getExtensions().getByType(SourceSetContainer.class).getByName(SourceSet.MAIN_SOURCE_SET_NAME).getOutput();
+        var relocateClasses = project1.getTasks().register(RelocateClassesTask.NAME, RelocateClassesTask.class, task -> {
+            task.getRelocations().putAll(relocations);
+            task.getClasses().from(mainOutput);
+            task.getRelocateServiceFiles().set(relocatesServiceFiles(shadowJar));
+        });
+        shadowJar.exclude(new ExcludeFilesUnder(mainOutput));
+        // shadowJar merges jars it gets as a source like any dependency
+        shadowJar.from(relocateClasses.flatMap(RelocateClassesTask::getOutputJar));
+    }
+
+    private void minimize(Project project1, SLibExtension extension, ShadowJar shadowJar) {
+        var pluginNameFile = pluginNameFile(project1, extension);
+        shadowJar.getInputs().file(pluginNameFile).optional().withPropertyName("slibPluginName");
+        shadowJar.getInputs().property("slibMinimizeKeep", new ArrayList<>(extension.getMinimizeKeep().get()));
+        // the final jar is rewritten in place so everything consuming shadowJar gets the minimized one
+        shadowJar.doLast("slibMinimize", new MinimizeJarAction(pluginNameFile, extension.getMinimizeKeep().get()));
+    }
+
+    private static File pluginNameFile(Project project1, SLibExtension extension) {
+        return project1.project(":" + extension.getMultiModuleCommonSubproject().get()).getLayout().getBuildDirectory().file("slib/pluginName.txt").get().getAsFile();
+    }
+
+    private static <T> void copyAttribute(AttributeContainer from, AttributeContainer to, Attribute<T> key) {
+        to.attribute(key, Objects.requireNonNull(from.getAttribute(key)));
+    }
+
+    private static Provider<Boolean> relocatesServiceFiles(ShadowJar shadowJar) {
+        // shadow only relocates service files while merging them
+        return shadowJar.getProject().provider(() -> shadowJar.getTransformers().stream().anyMatch(ServiceFileTransformer.class::isInstance));
     }
 
-    private void relocate(Project project1, SLibExtension extension) {
-        var path = extension.getCustomRelocatePath() != null ? extension.getCustomRelocatePath() : (project1.getGroup() + ".lib");
-        var shadowJar = project1.getTasks().withType(ShadowJar.class).getByName("shadowJar");
-        if (extension.getMultiModuleApiSubprojectApiUtilsWrapperRelocation() != null) {
-            shadowJar.relocate("org.screamingsandals.lib.api", extension.getMultiModuleApiSubprojectApiUtilsWrapperRelocation());
+    private static class AnnotationProcessorArguments implements CommandLineArgumentProvider {
+        private final Provider<List<String>> arguments;
+
+        AnnotationProcessorArguments(Provider<List<String>> arguments) {
+            this.arguments = arguments;
         }
-        shadowJar.relocate("org.screamingsandals.lib", path);
-        if (extension.getAdditionalContent().stream().anyMatch(additionalContent -> additionalContent instanceof ThirdPartyModule && ((ThirdPartyModule) additionalContent).getGroupId().equals(Constants.SIMPLE_INVENTORIES_GROUP_ID))) {
-            shadowJar.relocate("org.screamingsandals.simpleinventories", path + ".inventories");
+
+        @Input
+        public Provider<List<String>> getArguments() {
+            return arguments;
+        }
+
+        @Override
+        public Iterable<String> asArguments() {
+            return arguments.get();
+        }
+    }
+
+    private static class ExcludeFilesUnder implements Spec<FileTreeElement> {
+        private final FileCollection roots;
+
+        ExcludeFilesUnder(FileCollection roots) {
+            this.roots = roots;
+        }
+
+        @Override
+        public boolean isSatisfiedBy(FileTreeElement element) {
+            // entries of merged jars have no file
+            var file = element.getFile();
+            return file != null && roots.getFiles().stream().anyMatch(root -> file.toPath().startsWith(root.toPath()));
         }
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,6 @@
 package org.screamingsandals.gradle.slib;
 
 import lombok.Data;
-import org.gradle.api.artifacts.dsl.DependencyHandler;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
 
@@ -18,12 +17,12 @@ public class SLibSingleModule implements AdditionalContent {
     @Override
     @ApiStatus.Internal
     @ApiStatus.OverrideOnly
-    public void apply(String configuration, DependencyHandler dependencies, String slibVersion, List<String> platforms) {
+    public void apply(String configuration, DependencyCollector dependencies, String slibVersion, List<String> platforms) {
         dependencies.add(configuration, Constants.SCREAMING_LIB_GROUP_ID + ":" + artifactId + ":" + slibVersion);
     }
 
     @Override
-    public void applyMultiModule(String configuration, DependencyHandler dependencies, String slibVersion, String platformName) {
+    public void applyMultiModule(String configuration, DependencyCollector dependencies, String slibVersion, String platformName) {
         if ("common".equals(platformName)) {
             dependencies.add(configuration, Constants.SCREAMING_LIB_GROUP_ID + ":" + artifactId + ":" + slibVersion);
         }
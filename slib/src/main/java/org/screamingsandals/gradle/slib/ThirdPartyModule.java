@@ -4,7 +4,6 @@ import lombok.Data;
 import lombok.Setter;
 import lombok.experimental.Tolerate;
 import org.gradle.api.artifacts.ModuleDependency;
-import org.gradle.api.artifacts.dsl.DependencyHandler;
 import org.gradle.api.provider.Provider;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
@@ -82,7 +81,7 @@ public class ThirdPartyModule implements AdditionalContent {
     @Override
     @ApiStatus.Internal
     @ApiStatus.OverrideOnly
-    public void apply(String configuration, DependencyHandler dependencies, String slibVersion, List<String> platforms) {
+    public void apply(String configuration, DependencyCollector dependencies, String slibVersion, List<String> platforms) {
         {
             var dependency = dependencies.add(configuration, groupId + ":" + module + "-common:" + version);
             if (dependency instanceof ModuleDependency) {
@@ -98,7 +97,7 @@ public class ThirdPartyModule implements AdditionalContent {
     }
 
     @Override
-    public void applyMultiModule(String configuration, DependencyHandler dependencies, String slibVersion, String platformName) {
+    public void applyMultiModule(String configuration, DependencyCollector dependencies, String slibVersion, String platformName) {
         var dependency = dependencies.add(configuration, groupId + ":" + module + "-" + platformName + ":" + version);
         if (dependency instanceof ModuleDependency) {
             ((ModuleDependency) dependency).exclude(Map.of("group", Constants.SCREAMING_LIB_GROUP_ID));
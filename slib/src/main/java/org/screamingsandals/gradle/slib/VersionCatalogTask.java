@@ -0,0 +1,67 @@
+package org.screamingsandals.gradle.slib;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.TreeMap;
+
+/**
+ * Writes the ScreamingLib coordinates used by the project as a version catalog,
+ * which other builds can import with {@code versionCatalogs { create("slib") { from(files("...")) } }}.
+ */
+public abstract class VersionCatalogTask extends DefaultTask {
+    public static final String NAME = "slibVersionCatalog";
+    public static final String VERSION_ALIAS = "screaminglib";
+
+    /**
+     * ScreamingLib version, libraries of this version reference it instead of repeating it
+     */
+    @Input
+    public abstract Property<String> getVersion();
+
+    /**
+     * Key - library alias
+     * Value - group:module:version
+     */
+    @Input
+    public abstract MapProperty<String, String> getLibraries();
+
+    @OutputFile
+    public abstract RegularFileProperty getOutputFile();
+
+    public VersionCatalogTask() {
+        getOutputFile().convention(getProject().getLayout().getBuildDirectory().file("slib/libs.versions.toml"));
+    }
+
+    @TaskAction
+    public void generate() throws IOException {
+        var version = getVersion().get();
+        var toml = new StringBuilder()
+                .append("[versions]\n")
+                .append(VERSION_ALIAS).append(" = \"").append(version).append("\"\n")
+                .append("\n[libraries]\n");
+        new TreeMap<>(getLibraries().get()).forEach((alias, notation) -> {
+            var separator = notation.lastIndexOf(':');
+            var module = notation.substring(0, separator);
+            var moduleVersion = notation.substring(separator + 1);
+            toml.append(alias).append(" = { module = \"").append(module).append("\", ");
+            if (moduleVersion.equals(version) && module.startsWith(Constants.SCREAMING_LIB_GROUP_ID + ":")) {
+                toml.append("version.ref = \"").append(VERSION_ALIAS).append("\" }\n");
+            } else {
+                toml.append("version = \"").append(moduleVersion).append("\" }\n");
+            }
+        });
+
+        var output = getOutputFile().get().getAsFile().toPath();
+        Files.createDirectories(output.getParent());
+        Files.writeString(output, toml, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,31 @@
+package org.screamingsandals.gradle.slib;
+
+import org.gradle.api.artifacts.CacheableRule;
+import org.gradle.api.artifacts.ComponentMetadataContext;
+import org.gradle.api.artifacts.ComponentMetadataRule;
+
+import javax.inject.Inject;
+
+/**
+ * Makes every module of a group a member of a virtual platform of the same version, so Gradle aligns them:
+ * if one of the modules is upgraded by conflict resolution, all the others are upgraded with it.
+ */
+@CacheableRule
+public abstract class VirtualPlatformRule implements ComponentMetadataRule {
+    public static final String PLATFORM_MODULE = "slib-virtual-platform";
+
+    private final String group;
+
+    @Inject
+    public VirtualPlatformRule(String group) {
+        this.group = group;
+    }
+
+    @Override
+    public void execute(ComponentMetadataContext context) {
+        var id = context.getDetails().getId();
+        if (group.equals(id.getGroup())) {
+            context.getDetails().belongsTo(group + ":" + PLATFORM_MODULE + ":" + id.getVersion(), true);
+        }
+    }
+}
@@ -1,4 +0,0 @@
-package org.slf4j;
-
-public class Logger {
-}
\ No newline at end of file
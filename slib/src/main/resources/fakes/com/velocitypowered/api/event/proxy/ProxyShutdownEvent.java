@@ -0,0 +1,4 @@
+package com.velocitypowered.api.event.proxy;
+
+public final class ProxyShutdownEvent {
+}
@@ -0,0 +1,13 @@
+package com.velocitypowered.api.plugin;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Retention(RetentionPolicy.CLASS)
+@Target({})
+public @interface Dependency {
+    String id();
+
+    boolean optional() default false;
+}
@@ -0,0 +1,4 @@
+package com.velocitypowered.api.plugin;
+
+public interface PluginContainer {
+}
@@ -0,0 +1,4 @@
+package com.velocitypowered.api.proxy;
+
+public interface ProxyServer {
+}
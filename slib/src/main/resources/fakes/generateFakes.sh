@@ -1,4 +1,5 @@
 #!/bin/sh
 
-# Bukkit
-javac -source 8 -target 8 JavaPlugin.java Plugin.java PluginBase.java Logger.java
\ No newline at end of file
+# Compiles every fake next to its source, index.properties says which platform needs which fake
+cd "$(dirname "$0")" || exit 1
+javac --release 8 -d . $(find . -name '*.java')
@@ -0,0 +1,7 @@
+package net.md_5.bungee.api;
+
+public abstract class ProxyServer {
+    public static ProxyServer getInstance() {
+        return null;
+    }
+}
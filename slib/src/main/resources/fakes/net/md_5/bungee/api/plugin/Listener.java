@@ -0,0 +1,4 @@
+package net.md_5.bungee.api.plugin;
+
+public interface Listener {
+}
@@ -0,0 +1,27 @@
+package net.md_5.bungee.api.plugin;
+
+import java.io.File;
+import java.util.logging.Logger;
+import net.md_5.bungee.api.ProxyServer;
+
+public class Plugin {
+    public Plugin() {}
+
+    public void onLoad() {}
+
+    public void onEnable() {}
+
+    public void onDisable() {}
+
+    public File getDataFolder() {
+        return null;
+    }
+
+    public ProxyServer getProxy() {
+        return null;
+    }
+
+    public Logger getLogger() {
+        return null;
+    }
+}
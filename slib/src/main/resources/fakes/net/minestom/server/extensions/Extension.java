@@ -0,0 +1,23 @@
+package net.minestom.server.extensions;
+
+import org.slf4j.Logger;
+
+public abstract class Extension {
+    protected Extension() {}
+
+    public void preInitialize() {}
+
+    public abstract void initialize();
+
+    public void postInitialize() {}
+
+    public void preTerminate() {}
+
+    public abstract void terminate();
+
+    public void postTerminate() {}
+
+    public Logger getLogger() {
+        return null;
+    }
+}
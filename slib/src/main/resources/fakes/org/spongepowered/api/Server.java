@@ -0,0 +1,4 @@
+package org.spongepowered.api;
+
+public interface Server extends Engine {
+}
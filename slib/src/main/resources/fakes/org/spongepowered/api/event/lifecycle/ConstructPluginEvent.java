@@ -0,0 +1,4 @@
+package org.spongepowered.api.event.lifecycle;
+
+public interface ConstructPluginEvent {
+}
@@ -0,0 +1,6 @@
+package org.spongepowered.api.event.lifecycle;
+
+import org.spongepowered.api.Engine;
+
+public interface StartingEngineEvent<E extends Engine> {
+}
@@ -0,0 +1,4 @@
+package org.spongepowered.plugin;
+
+public interface PluginContainer {
+}
@@ -0,0 +1,99 @@
+package org.screamingsandals.gradle.slib;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class JarMinimizerTest {
+    @TempDir
+    Path directory;
+
+    /**
+     * A class with a field of each of the given types, which is enough to reference them.
+     */
+    private static byte[] classReferencing(String name, String... references) {
+        var writer = new ClassWriter(0);
+        writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+        for (var i = 0; i < references.length; i++) {
+            writer.visitField(Opcodes.ACC_PRIVATE, "field" + i, "L" + references[i] + ";", null, null).visitEnd();
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private Path jar(Map<String, byte[]> entries) throws IOException {
+        var jar = directory.resolve("input.jar");
+        try (var out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            for (var entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private Set<String> minimize(Path jar, List<String> mainClasses) throws IOException {
+        var output = directory.resolve("output.jar");
+        new JarMinimizer(Collections.emptyList()).minimize(jar, output, mainClasses);
+        var entries = new TreeSet<String>();
+        try (var zip = new ZipFile(output.toFile())) {
+            zip.stream().forEach(entry -> entries.add(entry.getName()));
+        }
+        return entries;
+    }
+
+    @Test
+    public void keepsEntrypointsOfPlatformDescriptors() throws IOException {
+        var entries = new LinkedHashMap<String, byte[]>();
+        entries.put("x/Main.class", classReferencing("x/Main", "x/Used"));
+        entries.put("x/Used.class", classReferencing("x/Used"));
+        entries.put("x/Unused.class", classReferencing("x/Unused"));
+        // the bootstraps reference the main class, but nothing references them
+        entries.put("x/BukkitBootstrap.class", classReferencing("x/BukkitBootstrap", "x/Main"));
+        entries.put("x/BungeeBootstrap.class", classReferencing("x/BungeeBootstrap", "x/Main"));
+        entries.put("x/VelocityBootstrap.class", classReferencing("x/VelocityBootstrap", "x/Main"));
+        entries.put("plugin.yml", "name: X\nversion: 1.0\nmain: x.BukkitBootstrap\napi-version: '1.13'\n".getBytes(StandardCharsets.UTF_8));
+        entries.put("bungee.yml", "name: X\r\nmain: 'x.BungeeBootstrap'\r\n".getBytes(StandardCharsets.UTF_8));
+        entries.put("velocity-plugin.json", "{\"id\":\"x\",\"main\": \"x.VelocityBootstrap\",\"dependencies\":[]}".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(Set.of(
+                "x/Main.class",
+                "x/Used.class",
+                "x/BukkitBootstrap.class",
+                "x/BungeeBootstrap.class",
+                "x/VelocityBootstrap.class",
+                "plugin.yml",
+                "bungee.yml",
+                "velocity-plugin.json"
+        ), minimize(jar(entries), List.of("x.Main")));
+    }
+
+    @Test
+    public void keepsOnlyWhatTheMainClassReachesWithoutDescriptors() throws IOException {
+        var entries = new LinkedHashMap<String, byte[]>();
+        entries.put("x/Main.class", classReferencing("x/Main", "x/Used"));
+        entries.put("x/Used.class", classReferencing("x/Used"));
+        entries.put("x/Unused.class", classReferencing("x/Unused"));
+        entries.put("x/Bootstrap.class", classReferencing("x/Bootstrap", "x/Main"));
+
+        assertEquals(Set.of("x/Main.class", "x/Used.class"), minimize(jar(entries), List.of("x.Main")));
+    }
+}